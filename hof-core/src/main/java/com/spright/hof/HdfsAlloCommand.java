@@ -0,0 +1,53 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * ALLO command which remembers the size declared by the client for the next
+ * upload of the session, so the upload policy can pick the settings of the
+ * file by size. The reply is given by the default command.
+ */
+public class HdfsAlloCommand extends AbstractCommand {
+
+  /**
+   * Session attribute holding the declared size
+   */
+  static final String SIZE_ATTRIBUTE = "hof.allo.size";
+
+  private final AbstractCommand fallback;
+
+  /**
+   * Constructs HdfsAlloCommand
+   *
+   * @param fallback default command giving the reply
+   */
+  public HdfsAlloCommand(AbstractCommand fallback) {
+    this.fallback = fallback;
+  }
+
+  public void execute(final FtpIoSession session,
+          final FtpServerContext context, final FtpRequest request)
+          throws IOException, FtpException {
+
+    // "ALLO <size>" or "ALLO <size> R <record size>"
+    session.removeAttribute(SIZE_ATTRIBUTE);
+    String argument = request.getArgument();
+    if (argument != null) {
+      try {
+        long size = Long.parseLong(argument.trim().split(" ")[0]);
+        if (size >= 0) {
+          session.setAttribute(SIZE_ATTRIBUTE, size);
+        }
+      } catch (NumberFormatException e) {
+        // no size to remember
+      }
+    }
+    fallback.execute(session, context, request);
+  }
+}
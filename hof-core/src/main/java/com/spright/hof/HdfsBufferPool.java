@@ -0,0 +1,145 @@
+package com.spright.hof;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of transfer buffers shared by all sessions, so transfers don't
+ * allocate buffers of their own. The buffers are direct, or heap buffers for
+ * readers which need a byte array. When all buffers are in use, new heap
+ * buffers are handed out instead and counted as misses.
+ */
+public class HdfsBufferPool {
+
+  private final int bufferSize;
+  private final int capacity;
+  private final boolean direct;
+  // arrays of the heap buffers of the pool, to tell them from misses
+  private final Set<byte[]> arrays = Collections.newSetFromMap(
+          new ConcurrentHashMap<byte[], Boolean>());
+  private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+  private final AtomicInteger allocated = new AtomicInteger();
+  private final AtomicInteger inUse = new AtomicInteger();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Constructs HdfsBufferPool
+   *
+   * @param bufferSize size of a buffer in bytes
+   * @param capacity maximum number of direct buffers
+   */
+  public HdfsBufferPool(int bufferSize, int capacity) {
+    this(bufferSize, capacity, true);
+  }
+
+  /**
+   * Constructs HdfsBufferPool
+   *
+   * @param bufferSize size of a buffer in bytes
+   * @param capacity maximum number of buffers
+   * @param direct false for a pool of heap buffers
+   */
+  public HdfsBufferPool(int bufferSize, int capacity, boolean direct) {
+    this.bufferSize = bufferSize;
+    this.capacity = capacity;
+    this.direct = direct;
+  }
+
+  /**
+   * Take a buffer from the pool
+   *
+   * @return cleared buffer, a buffer of the pool unless it is exhausted
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = free.poll();
+    if (buffer == null) {
+      if (allocated.incrementAndGet() > capacity) {
+        allocated.decrementAndGet();
+        misses.incrementAndGet();
+        return ByteBuffer.allocate(bufferSize);
+      }
+      if (direct) {
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+      } else {
+        buffer = ByteBuffer.allocate(bufferSize);
+        arrays.add(buffer.array());
+      }
+    }
+    inUse.incrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  private boolean isPooled(ByteBuffer buffer) {
+    return direct ? buffer.isDirect() : arrays.contains(buffer.array());
+  }
+
+  /**
+   * Give a buffer back to the pool. Buffers handed out on a miss are left to
+   * the garbage collector.
+   *
+   * @param buffer buffer taken from the pool
+   */
+  public void release(ByteBuffer buffer) {
+    if (isPooled(buffer)) {
+      inUse.decrementAndGet();
+      free.offer(buffer);
+    }
+  }
+
+  /**
+   * Forget a buffer which can't be given back, so another one can be
+   * allocated in its place
+   *
+   * @param buffer buffer taken from the pool
+   */
+  public void discard(ByteBuffer buffer) {
+    if (isPooled(buffer)) {
+      if (!direct) {
+        arrays.remove(buffer.array());
+      }
+      inUse.decrementAndGet();
+      allocated.decrementAndGet();
+    }
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the number of buffers of the pool allocated so far
+   *
+   * @return number of buffers in use or free
+   */
+  public int getAllocated() {
+    return allocated.get();
+  }
+
+  /**
+   * Get the number of buffers of the pool held by transfers
+   *
+   * @return number of buffers in use
+   */
+  public int getInUse() {
+    return inUse.get();
+  }
+
+  /**
+   * Get the number of heap buffers handed out because the pool was exhausted
+   *
+   * @return number of misses
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+}
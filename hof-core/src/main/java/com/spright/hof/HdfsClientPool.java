@@ -0,0 +1,144 @@
+package com.spright.hof;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed set of DistributedFileSystem clients to the same HDFS. Each client
+ * gets its own IPC connection to the NameNode, so RPCs of many sessions are
+ * spread over several sockets instead of queuing on one.
+ */
+public class HdfsClientPool {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsClientPool.class);
+
+  /**
+   * How a client is picked for an operation
+   */
+  public enum Policy {
+    /**
+     * every session sticks to one client
+     */
+    SESSION,
+    /**
+     * all sessions of a user stick to one client
+     */
+    USER,
+    /**
+     * every operation takes the next client
+     */
+    ROUND_ROBIN
+  }
+
+  private final static String MAX_IDLE_TIME_KEY = "ipc.client.connection.maxidletime";
+  private final static int MAX_IDLE_TIME_DEFAULT = 10000;
+
+  private final DistributedFileSystem[] clients;
+  private final Policy policy;
+  private final AtomicInteger next = new AtomicInteger();
+
+  /**
+   * Constructs HdfsClientPool and connects all clients
+   *
+   * @param uri HDFS uri
+   * @param conf configuration for the clients
+   * @param size number of clients
+   * @param policy how a client is picked
+   * @throws IOException if a client can't be initialized
+   */
+  public HdfsClientPool(URI uri, Configuration conf, int size, Policy policy) throws IOException {
+    this.clients = new DistributedFileSystem[Math.max(size, 1)];
+    this.policy = policy;
+    int maxIdleTime = conf.getInt(MAX_IDLE_TIME_KEY, MAX_IDLE_TIME_DEFAULT);
+    for (int i = 0; i < clients.length; i++) {
+      // the IPC client shares a connection between equal connection ids, a
+      // different idle time gives every client a connection of its own
+      Configuration clientConf = new Configuration(conf);
+      clientConf.setInt(MAX_IDLE_TIME_KEY, maxIdleTime + i);
+      DistributedFileSystem dfs = new DistributedFileSystem();
+      try {
+        dfs.initialize(uri, clientConf);
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+      clients[i] = dfs;
+    }
+    log.debug("Connected " + clients.length + " DFS clients to " + uri);
+  }
+
+  /**
+   * Constructs HdfsClientPool with clients which are already connected
+   *
+   * @param clients clients to pick from
+   * @param policy how a client is picked
+   */
+  public HdfsClientPool(DistributedFileSystem[] clients, Policy policy) {
+    this.clients = clients.clone();
+    this.policy = policy;
+  }
+
+  /**
+   * Get the client for an operation of the user
+   *
+   * @param user FTP user of the session, null if the operation doesn't belong
+   * to a session
+   * @return client picked by the policy
+   */
+  public DistributedFileSystem get(HdfsUser user) {
+    if (clients.length == 1) {
+      return clients[0];
+    }
+    if (user == null || policy == Policy.ROUND_ROBIN) {
+      return next();
+    }
+    int hash;
+    if (policy == Policy.USER) {
+      hash = user.getName().hashCode();
+    } else {
+      // a new HdfsUser is made for the file system view of every session
+      hash = System.identityHashCode(user);
+    }
+    return clients[(hash & Integer.MAX_VALUE) % clients.length];
+  }
+
+  /**
+   * Get the next client in turn
+   *
+   * @return client
+   */
+  public DistributedFileSystem next() {
+    return clients[(next.getAndIncrement() & Integer.MAX_VALUE) % clients.length];
+  }
+
+  /**
+   * Get the number of clients
+   *
+   * @return number of clients
+   */
+  public int size() {
+    return clients.length;
+  }
+
+  /**
+   * Close all clients
+   */
+  public void close() {
+    for (DistributedFileSystem dfs : clients) {
+      if (dfs == null) {
+        continue;
+      }
+      try {
+        dfs.close();
+      } catch (IOException e) {
+        log.warn("Error closing DFS client", e);
+      }
+    }
+  }
+}
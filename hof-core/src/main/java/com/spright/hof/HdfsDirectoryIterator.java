@@ -0,0 +1,97 @@
+package com.spright.hof;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over a directory one partial listing at a time, so only a single
+ * batch of statuses is held in memory. A listing which fits in the first
+ * batch is put into the status cache.
+ */
+public class HdfsDirectoryIterator implements RemoteIterator<FileStatus> {
+
+  private final DistributedFileSystem dfs;
+  private final Path path;
+  private DirectoryListing listing;
+  private FileStatus[] batch;
+  private int index = 0;
+
+  /**
+   * Constructs HdfsDirectoryIterator and fetches the first batch
+   *
+   * @param dfs filesystem to list
+   * @param path directory to list
+   * @param cache cache to put a complete first batch into, may be null
+   * @throws IOException if the directory can't be listed
+   */
+  public HdfsDirectoryIterator(DistributedFileSystem dfs, Path path,
+          HdfsFileStatusCache cache) throws IOException {
+    this.dfs = dfs;
+    this.path = HdfsFileStatusCache.key(path);
+    fetch(HdfsFileStatus.EMPTY_NAME);
+    if (cache != null && !listing.hasMore()) {
+      cache.putListing(this.path, batch);
+    }
+  }
+
+  private void fetch(byte[] startAfter) throws IOException {
+    listing = dfs.getClient().listPaths(path.toString(), startAfter);
+    if (listing == null) {
+      throw new FileNotFoundException("File " + path + " does not exist.");
+    }
+    HdfsFileStatus[] partial = listing.getPartialListing();
+    batch = new FileStatus[partial.length];
+    for (int i = 0; i < partial.length; i++) {
+      batch[i] = partial[i].makeQualified(dfs.getUri(), path);
+    }
+    index = 0;
+  }
+
+  public boolean hasNext() throws IOException {
+    while (index >= batch.length) {
+      if (!listing.hasMore()) {
+        return false;
+      }
+      fetch(listing.getLastName());
+    }
+    return true;
+  }
+
+  public FileStatus next() throws IOException {
+    if (!hasNext()) {
+      throw new NoSuchElementException("No more entries in " + path);
+    }
+    return batch[index++];
+  }
+
+  /**
+   * Iterate over statuses which are already in memory
+   *
+   * @param statuses statuses to iterate over
+   * @return iterator over the statuses
+   */
+  public static RemoteIterator<FileStatus> of(final FileStatus... statuses) {
+    return new RemoteIterator<FileStatus>() {
+      private int index = 0;
+
+      public boolean hasNext() {
+        return index < statuses.length;
+      }
+
+      public FileStatus next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return statuses[index++];
+      }
+    };
+  }
+}
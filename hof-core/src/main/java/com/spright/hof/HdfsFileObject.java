@@ -5,16 +5,27 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSInputStream;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.hadoop.security.AccessControlException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * This class implements all actions to HDFS
@@ -26,6 +37,18 @@ public class HdfsFileObject implements FtpFile {
   private Path path;
   private HdfsUser user;
 
+  // snapshot of the object status, fetched once and shared by all accessors
+  private FileStatus status = null;
+
+  // listing of the directory started ahead of time, used once by streamFiles
+  private Future<RemoteIterator<FileStatus>> prefetchedListing = null;
+
+  // read local blocks from their block files, set for plain data connections
+  private boolean localBlockReads = false;
+
+  // size declared by ALLO for an upload to the object, -1 if none
+  private long declaredSize = -1;
+
   /**
    * Constructs HdfsFileObject from path
    *
@@ -37,6 +60,63 @@ public class HdfsFileObject implements FtpFile {
     this.user = user;
   }
 
+  /**
+   * Constructs HdfsFileObject from an already fetched status
+   *
+   * @param status status of the object, e.g. from a directory listing
+   * @param user accessor of the object
+   */
+  public HdfsFileObject(FileStatus status, HdfsUser user) {
+    this.path = new Path(status.getPath().toUri().getPath());
+    this.user = user;
+    this.status = status;
+  }
+
+  /**
+   * Get the status snapshot of the object. The status is fetched from HDFS on
+   * first use and reused by every accessor afterwards.
+   *
+   * @return status of the object
+   * @throws IOException if the object doesn't exist
+   */
+  private FileStatus getStatus() throws IOException {
+    FileStatus fs = findStatus();
+    if (fs == null) {
+      throw new FileNotFoundException("File does not exist: " + path);
+    }
+    return fs;
+  }
+
+  /**
+   * Get the status snapshot of the object without failing if it is missing
+   *
+   * @return status of the object or null if the object doesn't exist
+   * @throws IOException if the status can't be fetched
+   */
+  private FileStatus findStatus() throws IOException {
+    if (status == null) {
+      status = HdfsOverFtpSystem.findFileStatus(path, user);
+    }
+    return status;
+  }
+
+  /**
+   * Get the status snapshot of the object
+   *
+   * @return status of the object or null if the object doesn't exist
+   * @throws IOException if the status can't be fetched
+   */
+  FileStatus getFileStatus() throws IOException {
+    return findStatus();
+  }
+
+  /**
+   * Drop the status snapshot after the object has been changed by us
+   */
+  private void resetStatus() {
+    status = null;
+  }
+
   /**
    * Get full name of the object
    *
@@ -77,9 +157,8 @@ public class HdfsFileObject implements FtpFile {
   public boolean isDirectory() {
     try {
       log.debug("is directory? : " + path);
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      FileStatus fs = dfs.getFileStatus(path);
-      return fs.isDir();
+      FileStatus fs = findStatus();
+      return fs != null && fs.isDirectory();
     } catch (IOException e) {
       log.debug(path + " is not dir", e);
       return false;
@@ -87,20 +166,24 @@ public class HdfsFileObject implements FtpFile {
   }
 
   /**
-   * Get HDFS permissions
+   * Checks the HDFS permission bits of the object for the user. Owner and
+   * group are taken from the status snapshot, so no extra RPC is needed.
    *
-   * @return HDFS permissions as a FsPermission instance
-   * @throws IOException if path doesn't exist so we get permissions of parent
-   * object in that case
+   * @param fs status of the object
+   * @param action action to check
+   * @return true if the user is allowed to perform the action
    */
-  private FsPermission getPermissions() throws IOException {
-//        try {
-    DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-    return dfs.getFileStatus(path).getPermission();
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//            return null;
-//        }
+  private boolean hasPermission(FileStatus fs, FsAction action) {
+    FsPermission permission = fs.getPermission();
+    FsAction granted;
+    if (user.getName().equals(fs.getOwner())) {
+      granted = permission.getUserAction();
+    } else if (user.isGroupMember(fs.getGroup())) {
+      granted = permission.getGroupAction();
+    } else {
+      granted = permission.getOtherAction();
+    }
+    return granted.implies(action);
   }
 
   /**
@@ -110,8 +193,8 @@ public class HdfsFileObject implements FtpFile {
    */
   public boolean isFile() {
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      return dfs.isFile(path);
+      FileStatus fs = findStatus();
+      return fs != null && fs.isFile();
     } catch (IOException e) {
       log.debug(path + " is not file", e);
       return false;
@@ -125,9 +208,7 @@ public class HdfsFileObject implements FtpFile {
    */
   public boolean doesExist() {
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      dfs.getFileStatus(path);
-      return true;
+      return findStatus() != null;
     } catch (IOException e) {
       //   log.debug(path + " does not exist", e);
       return false;
@@ -141,29 +222,38 @@ public class HdfsFileObject implements FtpFile {
    */
   public boolean isReadable() {
     try {
-      FsPermission permissions = getPermissions();
-      if (user.getName().equals(getOwnerName())) {
-        if (permissions.toString().substring(0, 1).equals("r")) {
-          log.debug("PERMISSIONS: " + path + " - " + " read allowed for user");
-          return true;
-        }
-      } else if (user.isGroupMember(getGroupName())) {
-        if (permissions.toString().substring(3, 4).equals("r")) {
-          log.debug("PERMISSIONS: " + path + " - " + " read allowed for group");
-          return true;
-        }
-      } else if (permissions.toString().substring(6, 7).equals("r")) {
-        log.debug("PERMISSIONS: " + path + " - " + " read allowed for others");
-        return true;
+      FileStatus fs = findStatus();
+      boolean allowed = fs != null && hasPermission(fs, FsAction.READ);
+      if (log.isDebugEnabled()) {
+        log.debug("PERMISSIONS: " + path + " - read " + (allowed ? "allowed" : "denied"));
       }
-      log.debug("PERMISSIONS: " + path + " - " + " read denied");
-      return false;
+      return allowed;
     } catch (IOException e) {
       e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
       return false;
     }
   }
 
+  /**
+   * Checks if the user has an execute permission on the object, which a
+   * directory needs to be traversed
+   *
+   * @return true if the user can traverse the object
+   */
+  public boolean isTraversable() {
+    try {
+      FileStatus fs = findStatus();
+      boolean allowed = fs != null && hasPermission(fs, FsAction.EXECUTE);
+      if (log.isDebugEnabled()) {
+        log.debug("PERMISSIONS: " + path + " - execute " + (allowed ? "allowed" : "denied"));
+      }
+      return allowed;
+    } catch (IOException e) {
+      log.debug(path + " is not traversable", e);
+      return false;
+    }
+  }
+
   private HdfsFileObject getParent() {
     String pathS = path.toString();
     String parentS = "/";
@@ -181,23 +271,15 @@ public class HdfsFileObject implements FtpFile {
    */
   public boolean isWritable() {
     try {
-      FsPermission permissions = getPermissions();
-      if (user.getName().equals(getOwnerName())) {
-        if (permissions.toString().substring(1, 2).equals("w")) {
-          log.debug("PERMISSIONS: " + path + " - " + " write allowed for user");
-          return true;
-        }
-      } else if (user.isGroupMember(getGroupName())) {
-        if (permissions.toString().substring(4, 5).equals("w")) {
-          log.debug("PERMISSIONS: " + path + " - " + " write allowed for group");
-          return true;
-        }
-      } else if (permissions.toString().substring(7, 8).equals("w")) {
-        log.debug("PERMISSIONS: " + path + " - " + " write allowed for others");
-        return true;
+      FileStatus fs = findStatus();
+      if (fs == null) {
+        return getParent().isWritable();
       }
-      log.debug("PERMISSIONS: " + path + " - " + " write denied");
-      return false;
+      boolean allowed = hasPermission(fs, FsAction.WRITE);
+      if (log.isDebugEnabled()) {
+        log.debug("PERMISSIONS: " + path + " - write " + (allowed ? "allowed" : "denied"));
+      }
+      return allowed;
     } catch (IOException e) {
       return getParent().isWritable();
     }
@@ -219,9 +301,7 @@ public class HdfsFileObject implements FtpFile {
    */
   public String getOwnerName() {
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      FileStatus fs = dfs.getFileStatus(path);
-      return fs.getOwner();
+      return getStatus().getOwner();
     } catch (IOException e) {
       e.printStackTrace();
       return null;
@@ -235,9 +315,7 @@ public class HdfsFileObject implements FtpFile {
    */
   public String getGroupName() {
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      FileStatus fs = dfs.getFileStatus(path);
-      return fs.getGroup();
+      return getStatus().getGroup();
     } catch (IOException e) {
       e.printStackTrace();
       return null;
@@ -260,9 +338,7 @@ public class HdfsFileObject implements FtpFile {
    */
   public long getLastModified() {
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      FileStatus fs = dfs.getFileStatus(path);
-      return fs.getModificationTime();
+      return getStatus().getModificationTime();
     } catch (IOException e) {
       e.printStackTrace();
       return 0;
@@ -285,9 +361,8 @@ public class HdfsFileObject implements FtpFile {
    */
   public long getSize() {
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      FileStatus fs = dfs.getFileStatus(path);
-      log.info("getSize(): " + path + " : " + fs.getLen());
+      FileStatus fs = getStatus();
+      log.debug("getSize(): " + path + " : " + fs.getLen());
       return fs.getLen();
     } catch (IOException e) {
       e.printStackTrace();
@@ -302,15 +377,26 @@ public class HdfsFileObject implements FtpFile {
    */
   public boolean mkdir() {
 
-    if (!isWritable()) {
+    // with proxy users the NameNode checks permissions and sets the owner
+    boolean proxyUser = HdfsOverFtpSystem.isProxyUser();
+    if (!proxyUser && !isWritable()) {
       log.debug("No write permission : " + path);
       return false;
     }
 
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      dfs.mkdirs(path);
-      dfs.setOwner(path, user.getName(), user.getMainGroup());
+      HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
+      try {
+        DistributedFileSystem dfs = lease.getDfs();
+        dfs.mkdirs(path);
+        if (!proxyUser) {
+          dfs.setOwner(path, user.getName(), user.getMainGroup());
+        }
+      } finally {
+        lease.release();
+      }
+      HdfsOverFtpSystem.invalidate(path);
+      resetStatus();
       return true;
     } catch (IOException e) {
       e.printStackTrace();
@@ -325,8 +411,14 @@ public class HdfsFileObject implements FtpFile {
    */
   public boolean delete() {
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      dfs.delete(path, true);
+      HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
+      try {
+        lease.getDfs().delete(path, true);
+      } finally {
+        lease.release();
+      }
+      HdfsOverFtpSystem.invalidateTree(path);
+      resetStatus();
       return true;
     } catch (IOException e) {
       e.printStackTrace();
@@ -341,9 +433,28 @@ public class HdfsFileObject implements FtpFile {
    * @return true if the object is moved successfully
    */
   public boolean move(FtpFile fileObject) {
+    Path dst = new Path(fileObject.getAbsolutePath());
+    if (!HdfsOverFtpSystem.isSameCluster(path, dst)) {
+      log.debug("Can't move " + path + " to " + dst + " on another cluster");
+      return false;
+    }
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      dfs.rename(path, new Path(fileObject.getAbsolutePath()));
+      HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
+      try {
+        DistributedFileSystem dfs = lease.getDfs();
+        // landed uploads waiting for their replication follow the rename
+        HdfsReplicationQueue queue = HdfsOverFtpSystem.getReplicationQueue();
+        if (queue == null) {
+          dfs.rename(path, dst);
+        } else {
+          queue.rename(dfs, path, dst);
+        }
+      } finally {
+        lease.release();
+      }
+      HdfsOverFtpSystem.invalidateTree(path);
+      HdfsOverFtpSystem.invalidateTree(dst);
+      resetStatus();
       return true;
     } catch (IOException e) {
       e.printStackTrace();
@@ -364,12 +475,11 @@ public class HdfsFileObject implements FtpFile {
     }
 
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      FileStatus fileStats[] = dfs.listStatus(path);
+      FileStatus fileStats[] = HdfsOverFtpSystem.listStatus(path, user);
 
       List<FtpFile> fileObjects = new ArrayList<FtpFile>();
       for (int i = 0; i < fileStats.length; i++) {
-        fileObjects.add(new HdfsFileObject(fileStats[i].getPath().toString(), user));
+        fileObjects.add(new HdfsFileObject(fileStats[i], user));
       }
       return fileObjects;
     } catch (IOException e) {
@@ -379,30 +489,261 @@ public class HdfsFileObject implements FtpFile {
   }
 
   /**
-   * Creates output stream to write to the object
+   * List files of the directory one batch at a time, so large directories
+   * don't have to be held in memory
    *
-   * @param l is not used here
+   * @return iterator over files of the directory, or over the object itself if
+   * it is a file
+   */
+  public RemoteIterator<FtpFile> streamFiles() {
+
+    if (!isReadable()) {
+      log.debug("No read permission : " + path);
+      return null;
+    }
+
+    try {
+      RemoteIterator<FileStatus> fileStats;
+      if (getStatus().isDirectory()) {
+        fileStats = takePrefetchedListing();
+        if (fileStats == null) {
+          fileStats = HdfsOverFtpSystem.listStatusIterator(path, user);
+        }
+      } else {
+        fileStats = HdfsDirectoryIterator.of(getStatus());
+      }
+      return toFiles(fileStats, user);
+    } catch (IOException e) {
+      log.debug("", e);
+      return null;
+    }
+  }
+
+  /**
+   * Hand a listing of the directory started ahead of time to the object
+   *
+   * @param listing listing in progress
+   */
+  void setPrefetchedListing(Future<RemoteIterator<FileStatus>> listing) {
+    this.prefetchedListing = listing;
+  }
+
+  /**
+   * Let createInputStream read local blocks straight from their block files
+   *
+   * @param localBlockReads true if the data connection can take them
+   */
+  void setLocalBlockReads(boolean localBlockReads) {
+    this.localBlockReads = localBlockReads;
+  }
+
+  /**
+   * Set the size declared for an upload to the object
+   *
+   * @param declaredSize size declared by ALLO, -1 if none
+   */
+  void setDeclaredSize(long declaredSize) {
+    this.declaredSize = declaredSize;
+  }
+
+  /**
+   * Wait for the listing started ahead of time
+   *
+   * @return the listing or null if there is none or it failed
+   */
+  private RemoteIterator<FileStatus> takePrefetchedListing() {
+    Future<RemoteIterator<FileStatus>> listing = prefetchedListing;
+    prefetchedListing = null;
+    if (listing == null) {
+      return null;
+    }
+    try {
+      return listing.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      log.debug("Prefetched listing of " + path + " failed", e.getCause());
+      return null;
+    }
+  }
+
+  /**
+   * Turn statuses into file objects as they are iterated
+   *
+   * @param fileStats statuses to iterate over
+   * @param user accessor of the objects
+   * @return iterator over file objects
+   */
+  static RemoteIterator<FtpFile> toFiles(final RemoteIterator<FileStatus> fileStats,
+          final HdfsUser user) {
+    return new RemoteIterator<FtpFile>() {
+      public boolean hasNext() throws IOException {
+        return fileStats.hasNext();
+      }
+
+      public FtpFile next() throws IOException {
+        return new HdfsFileObject(fileStats.next(), user);
+      }
+    };
+  }
+
+  /**
+   * Creates output stream to write to the object. A non-zero offset, from
+   * REST before STOR or from APPE, appends to the object and must be its
+   * length.
+   *
+   * @param l offset to write at
    * @return OutputStream
    * @throws IOException
    */
   public OutputStream createOutputStream(long l) throws IOException {
 
-    // permission check
-    if (!isWritable()) {
+    // permission check, with proxy users it is done by the NameNode
+    boolean proxyUser = HdfsOverFtpSystem.isProxyUser();
+    if (!proxyUser && !isWritable()) {
       throw new IOException("No write permission : " + path);
     }
 
+    HdfsSegmentedUploads uploads = HdfsOverFtpSystem.getSegmentedUploads();
+    HdfsSegmentedUploads.Upload upload = uploads == null ? null : uploads.get(path);
+    if (upload != null && !upload.isDeclaredBy(user)) {
+      // only the declaring user sends parts, anyone else replaces the file
+      uploads.cancel(upload);
+      upload = null;
+    }
+    HdfsUploadSpool spool = HdfsOverFtpSystem.getUploadSpool();
+    if (spool != null) {
+      if (upload == null && l == 0) {
+        if (proxyUser) {
+          // the NameNode only sees a spooled upload after the client was told
+          // it is stored
+          checkCreateAccess();
+        }
+        OutputStream out = spool.create(path, user, declaredSize);
+        if (out != null) {
+          resetStatus();
+          return out;
+        }
+      } else if (upload == null && spool.isPending(path)) {
+        throw new IOException("File is being committed : " + path);
+      }
+      // written directly, a spooled upload of the file must not overwrite it
+      spool.supersede(path);
+    }
+
+    HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
+    if (upload != null || l > 0) {
+      // a refused offset is reported to the client
+      try {
+        DistributedFileSystem dfs = lease.getDfs();
+        // the offset picks the part of an upload sent over several connections
+        OutputStream out = upload != null ? upload.createPart(dfs, l) : append(dfs, l);
+        HdfsOverFtpSystem.invalidate(path);
+        resetStatus();
+        return new InvalidatingOutputStream(out, path, lease);
+      } catch (IOException e) {
+        lease.release();
+        throw e;
+      }
+    }
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-      FSDataOutputStream out = dfs.create(path);
-      dfs.setOwner(path, user.getName(), user.getMainGroup());
-      return out;
+      DistributedFileSystem dfs = lease.getDfs();
+      FSDataOutputStream out = HdfsOverFtpSystem.getUploadPolicy().create(dfs, path, user,
+              declaredSize);
+      if (!proxyUser) {
+        dfs.setOwner(path, user.getName(), user.getMainGroup());
+      }
+      HdfsOverFtpSystem.invalidate(path);
+      resetStatus();
+      return new InvalidatingOutputStream(out, path, lease);
+    } catch (AccessControlException e) {
+      lease.release();
+      throw e;
     } catch (IOException e) {
+      lease.release();
       e.printStackTrace();
       return null;
     }
   }
 
+  /**
+   * Ask the NameNode if the user may create the object, overwriting it if it
+   * exists
+   */
+  private void checkCreateAccess() throws IOException {
+    HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
+    try {
+      DistributedFileSystem dfs = lease.getDfs();
+      dfs.access(path.getParent(), FsAction.WRITE_EXECUTE);
+      try {
+        dfs.access(path, FsAction.WRITE);
+      } catch (FileNotFoundException e) {
+        // created by the upload
+      }
+    } finally {
+      lease.release();
+    }
+  }
+
+  /**
+   * Open the object to append at the offset, which must be its length. The
+   * object is recovered first if it was left open by a writer which is gone.
+   */
+  private OutputStream append(DistributedFileSystem dfs, long offset) throws IOException {
+    if (!dfs.isFileClosed(path)) {
+      if (HdfsOverFtpSystem.isWriting(path)) {
+        throw new IOException("File is being written : " + path);
+      }
+      recoverLease(dfs);
+    }
+    long length = dfs.getFileStatus(path).getLen();
+    if (offset != length) {
+      throw new IOException("Offset " + offset + " does not match the length " + length
+              + " of " + path);
+    }
+    return dfs.append(path);
+  }
+
+  /**
+   * Close the object left open by another writer, waiting for the NameNode to
+   * settle the length of its last block
+   */
+  private void recoverLease(DistributedFileSystem dfs) throws IOException {
+    log.info("Recovering the lease of " + path);
+    long deadline = System.currentTimeMillis() + HdfsOverFtpSystem.getLeaseRecoveryTimeout();
+    boolean closed = dfs.recoverLease(path);
+    while (!closed) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new IOException("Lease recovery of " + path + " timed out");
+      }
+      try {
+        Thread.sleep(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted recovering the lease of " + path);
+      }
+      closed = dfs.isFileClosed(path);
+    }
+  }
+
+  /**
+   * Declare an upload of the object in parts over several connections
+   *
+   * @param uploads uploads in parts of the server
+   * @param size size of the object in bytes
+   * @param parts number of parts wanted by the client
+   * @return the upload, with the part size and number of parts to send
+   * @throws IOException if the object can't be written
+   */
+  HdfsSegmentedUploads.Upload declareUpload(HdfsSegmentedUploads uploads, long size, int parts)
+          throws IOException {
+    if (!HdfsOverFtpSystem.isProxyUser() && !isWritable()) {
+      throw new IOException("No write permission : " + path);
+    }
+    return uploads.declare(path, user, size, parts);
+  }
+
   /**
    * Creates input stream to read from the object
    *
@@ -411,18 +752,130 @@ public class HdfsFileObject implements FtpFile {
    * @throws IOException
    */
   public InputStream createInputStream(long l) throws IOException {
-    // permission check
-    if (!isReadable()) {
+    // permission check, with proxy users it is done by the NameNode
+    if (!HdfsOverFtpSystem.isProxyUser() && !isReadable()) {
       throw new IOException("No read permission : " + path);
     }
+    HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
     try {
-      DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
+      DistributedFileSystem dfs = lease.getDfs();
+      if (localBlockReads && HdfsOverFtpSystem.isLocalBlockReads()) {
+        return new LeasedInputStream(new HdfsLocalBlockInputStream(dfs, path, l), null, path,
+                lease);
+      }
+      HdfsOpenFileCache openFileCache = HdfsOverFtpSystem.getOpenFileCache();
+      if (openFileCache != null) {
+        HdfsOpenFileCache.Handle handle = openFileCache.open(path, user);
+        InputStream transfer = new HdfsPositionalInputStream(handle.getStream(), l,
+                HdfsOverFtpSystem.getChunkPool(), handle);
+        HdfsReadAhead readAhead = HdfsOverFtpSystem.getReadAhead();
+        if (readAhead != null) {
+          transfer = readAhead.wrap(transfer);
+        }
+        // read statistics of a shared stream are not those of the transfer
+        return new LeasedInputStream(transfer, null, path, lease);
+      }
       FSDataInputStream in = dfs.open(path);
-      in.seek(l);
-      return in;
+      InputStream transfer;
+      if (HdfsOverFtpSystem.isHedgedReads()) {
+        // only positional reads are hedged
+        transfer = new HdfsPositionalInputStream(in, l, HdfsOverFtpSystem.getChunkPool(), in);
+      } else {
+        in.seek(l);
+        transfer = in;
+      }
+      HdfsReadAhead readAhead = HdfsOverFtpSystem.getReadAhead();
+      if (readAhead != null) {
+        transfer = readAhead.wrap(transfer);
+      }
+      return new LeasedInputStream(transfer, in, path, lease);
+    } catch (AccessControlException e) {
+      lease.release();
+      throw e;
     } catch (IOException e) {
+      lease.release();
       e.printStackTrace();
       return null;
     }
   }
+
+  /**
+   * Output stream which invalidates the cached status of the written file when
+   * it is closed, so the final length becomes visible. It also keeps the
+   * filesystem it writes to open until then.
+   */
+  private static class InvalidatingOutputStream extends FilterOutputStream {
+
+    private final Path path;
+    private final HdfsProxyFileSystems.Lease lease;
+    private boolean closed = false;
+
+    InvalidatingOutputStream(OutputStream out, Path path, HdfsProxyFileSystems.Lease lease) {
+      super(out);
+      this.path = path;
+      this.lease = lease;
+      HdfsOverFtpSystem.startWriting(path);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        HdfsOverFtpSystem.invalidate(path);
+        if (!closed) {
+          closed = true;
+          HdfsOverFtpSystem.endWriting(path);
+          lease.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Input stream which keeps the filesystem it reads from open until it is
+   * closed. With short-circuit reads enabled it reports how the bytes of the
+   * transfer were read.
+   */
+  private static class LeasedInputStream extends FilterInputStream {
+
+    private final static Logger log = LoggerFactory.getLogger(HdfsFileObject.class);
+
+    private final FSDataInputStream source;
+    private final Path path;
+    private final HdfsProxyFileSystems.Lease lease;
+    private boolean closed = false;
+
+    LeasedInputStream(InputStream in, FSDataInputStream source, Path path,
+            HdfsProxyFileSystems.Lease lease) {
+      super(in);
+      this.source = source;
+      this.path = path;
+      this.lease = lease;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed && HdfsOverFtpSystem.isShortCircuit() && source instanceof HdfsDataInputStream) {
+        DFSInputStream.ReadStatistics stats = ((HdfsDataInputStream) source).getReadStatistics();
+        log.info("Read " + stats.getTotalBytesRead() + " bytes of " + path + ": "
+                + stats.getTotalShortCircuitBytesRead() + " short-circuit, "
+                + stats.getTotalLocalBytesRead() + " local, "
+                + stats.getRemoteBytesRead() + " remote");
+      }
+      try {
+        super.close();
+      } finally {
+        if (!closed) {
+          closed = true;
+          lease.release();
+        }
+      }
+    }
+  }
 }
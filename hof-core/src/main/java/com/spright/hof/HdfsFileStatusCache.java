@@ -0,0 +1,238 @@
+package com.spright.hof;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-wide cache of HDFS statuses and directory listings. Entries expire
+ * after a fixed time and the least recently used entries are evicted once the
+ * cache is full. Paths found missing can be remembered for a shorter time.
+ */
+public class HdfsFileStatusCache {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsFileStatusCache.class);
+
+  private final Cache<Path, FileStatus> statuses;
+  private final Cache<Path, FileStatus[]> listings;
+  private final Cache<Path, Boolean> missing;
+
+  /**
+   * Constructs HdfsFileStatusCache which doesn't remember missing paths
+   *
+   * @param maxEntries maximum number of statuses and of listings to keep
+   * @param ttlMillis time in milliseconds an entry stays valid
+   */
+  public HdfsFileStatusCache(long maxEntries, long ttlMillis) {
+    this(maxEntries, ttlMillis, 0);
+  }
+
+  /**
+   * Constructs HdfsFileStatusCache
+   *
+   * @param maxEntries maximum number of statuses, listings and missing paths to
+   * keep
+   * @param ttlMillis time in milliseconds an entry stays valid
+   * @param missingTtlMillis time in milliseconds a missing path is remembered,
+   * 0 to not remember missing paths
+   */
+  public HdfsFileStatusCache(long maxEntries, long ttlMillis, long missingTtlMillis) {
+    statuses = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+            .build();
+    listings = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+            .build();
+    if (missingTtlMillis > 0) {
+      missing = CacheBuilder.newBuilder()
+              .maximumSize(maxEntries)
+              .expireAfterWrite(missingTtlMillis, TimeUnit.MILLISECONDS)
+              .build();
+    } else {
+      missing = null;
+    }
+  }
+
+  /**
+   * Strip scheme and authority so that qualified and plain paths share keys
+   */
+  static Path key(Path path) {
+    return new Path(path.toUri().getPath());
+  }
+
+  /**
+   * Get status of the path, asking HDFS only on a cache miss
+   *
+   * @param dfs filesystem to ask on a miss
+   * @param path path to get status of
+   * @return status of the path
+   * @throws IOException if the path doesn't exist
+   */
+  public FileStatus getFileStatus(DistributedFileSystem dfs, Path path) throws IOException {
+    FileStatus status = findFileStatus(dfs, path);
+    if (status == null) {
+      throw new FileNotFoundException("File does not exist: " + path);
+    }
+    return status;
+  }
+
+  /**
+   * Get status of the path, asking HDFS only on a cache miss. A path known to
+   * be missing is answered without asking HDFS and without an exception.
+   *
+   * @param dfs filesystem to ask on a miss
+   * @param path path to get status of
+   * @return status of the path or null if the path doesn't exist
+   * @throws IOException if the status can't be fetched
+   */
+  public FileStatus findFileStatus(DistributedFileSystem dfs, Path path) throws IOException {
+    return findFileStatus(dfs, path, true);
+  }
+
+  /**
+   * Get status of the path, asking HDFS only on a cache miss
+   *
+   * @param dfs filesystem to ask on a miss
+   * @param path path to get status of
+   * @param rememberMissing false if dfs may lag behind, as a standby
+   * NameNode does, so a path it doesn't know is not remembered as missing
+   * @return status of the path or null if the path doesn't exist
+   * @throws IOException if the status can't be fetched
+   */
+  public FileStatus findFileStatus(DistributedFileSystem dfs, Path path, boolean rememberMissing)
+          throws IOException {
+    Path key = key(path);
+    FileStatus status = statuses.getIfPresent(key);
+    if (status != null) {
+      return status;
+    }
+    if (missing != null && missing.getIfPresent(key) != null) {
+      return null;
+    }
+    try {
+      status = dfs.getFileStatus(key);
+    } catch (FileNotFoundException e) {
+      if (missing != null && rememberMissing) {
+        missing.put(key, Boolean.TRUE);
+      }
+      return null;
+    }
+    statuses.put(key, status);
+    return status;
+  }
+
+  /**
+   * List the directory, asking HDFS only on a cache miss. The statuses of the
+   * children are cached as well.
+   *
+   * @param dfs filesystem to ask on a miss
+   * @param path directory to list
+   * @return statuses of the children
+   * @throws IOException if the directory can't be listed
+   */
+  public FileStatus[] listStatus(DistributedFileSystem dfs, Path path) throws IOException {
+    FileStatus[] children = getListing(path);
+    if (children == null) {
+      children = dfs.listStatus(key(path));
+      putListing(path, children);
+    }
+    return children;
+  }
+
+  /**
+   * Get the cached listing of the directory without asking HDFS
+   *
+   * @param path directory to list
+   * @return statuses of the children or null if the listing isn't cached
+   */
+  public FileStatus[] getListing(Path path) {
+    return listings.getIfPresent(key(path));
+  }
+
+  /**
+   * Cache a complete listing of the directory and the statuses of its
+   * children
+   *
+   * @param path listed directory
+   * @param children statuses of the children
+   */
+  public void putListing(Path path, FileStatus[] children) {
+    listings.put(key(path), children);
+    for (FileStatus child : children) {
+      statuses.put(key(child.getPath()), child);
+    }
+  }
+
+  /**
+   * Drop the path and its parent directory from the cache. The path and all
+   * its ancestors are no longer remembered as missing, as creating a path
+   * creates its parents as well.
+   *
+   * @param path changed path
+   */
+  public void invalidate(Path path) {
+    Path key = key(path);
+    log.debug("invalidate: " + key);
+    statuses.invalidate(key);
+    listings.invalidate(key);
+    Path parent = key.getParent();
+    if (parent != null) {
+      statuses.invalidate(parent);
+      listings.invalidate(parent);
+    }
+    if (missing != null) {
+      for (Path p = key; p != null; p = p.getParent()) {
+        missing.invalidate(p);
+      }
+    }
+  }
+
+  /**
+   * Drop the path, everything below it and its parent directory from the
+   * cache
+   *
+   * @param path changed path
+   */
+  public void invalidateTree(Path path) {
+    invalidate(path);
+    String prefix = key(path).toString();
+    if (!prefix.endsWith(Path.SEPARATOR)) {
+      prefix += Path.SEPARATOR;
+    }
+    removeUnder(statuses.asMap().keySet().iterator(), prefix);
+    removeUnder(listings.asMap().keySet().iterator(), prefix);
+    if (missing != null) {
+      removeUnder(missing.asMap().keySet().iterator(), prefix);
+    }
+  }
+
+  private static void removeUnder(Iterator<Path> keys, String prefix) {
+    while (keys.hasNext()) {
+      if (keys.next().toString().startsWith(prefix)) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * Drop all entries
+   */
+  public void clear() {
+    statuses.invalidateAll();
+    listings.invalidateAll();
+    if (missing != null) {
+      missing.invalidateAll();
+    }
+  }
+}
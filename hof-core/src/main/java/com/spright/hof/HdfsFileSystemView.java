@@ -3,12 +3,25 @@ package com.spright.hof;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Implemented FileSystemView to use HdfsFileObject
  */
 public class HdfsFileSystemView implements FileSystemView {
 
+  private final Logger log = LoggerFactory.getLogger(HdfsFileSystemView.class);
+
   // the root directory will always end with '/'.
   private String rootDir = "/";
 
@@ -18,6 +31,17 @@ public class HdfsFileSystemView implements FileSystemView {
 
   private HdfsUser user;
 
+  // directory listed ahead of time after the last change of directory
+  private Path prefetchDir = null;
+  private Future<RemoteIterator<FileStatus>> prefetchedListing = null;
+
+  // files are read from local block files, while a RETR on a plain data
+  // connection is running
+  private boolean localBlockReads = false;
+
+  // size declared by ALLO, while the upload following it is running
+  private long declaredSize = -1;
+
   // private boolean writePermission;
   private boolean caseInsensitive = false;
 
@@ -69,41 +93,192 @@ public class HdfsFileSystemView implements FileSystemView {
   }
 
   /**
-   * Get file object.
+   * Get absolute path of the file with respect to the current directory.
    */
-  public FtpFile getFile(String file) {
-    String path;
+  private String getPath(String file) {
     if (file.startsWith("/")) {
-      path = file;
+      return file;
     } else if (currDir.length() > 1) {
-      path = currDir + "/" + file;
+      return currDir + "/" + file;
     } else {
-      path = "/" + file;
+      return "/" + file;
+    }
+  }
+
+  /**
+   * Get file object.
+   */
+  public FtpFile getFile(String file) {
+    HdfsFileObject fileObject = new HdfsFileObject(getPath(file), user);
+    fileObject.setLocalBlockReads(localBlockReads);
+    fileObject.setDeclaredSize(declaredSize);
+    dropPrefetchedListing(fileObject);
+    return fileObject;
+  }
+
+  /**
+   * Let files got from the view read local blocks from their block files
+   *
+   * @param localBlockReads true while the data connection can take them
+   */
+  void setLocalBlockReads(boolean localBlockReads) {
+    this.localBlockReads = localBlockReads;
+  }
+
+  /**
+   * Let files got from the view know the size declared for the upload
+   *
+   * @param declaredSize size declared by ALLO, -1 if none
+   */
+  void setDeclaredSize(long declaredSize) {
+    this.declaredSize = declaredSize;
+  }
+
+  /**
+   * Drop the prefetched listing when anything inside the prefetched directory
+   * is accessed, since it may be changed. The directory itself can be got any
+   * number of times, as the CWD reply and PWD do.
+   */
+  private void dropPrefetchedListing(FtpFile file) {
+    if (prefetchDir != null
+            && prefetchDir.equals(new Path(file.getAbsolutePath()).getParent())) {
+      clearPrefetchedListing();
+    }
+  }
+
+  /**
+   * Take the listing started after the last change of directory, for a
+   * listing of the directory. The listing is used only once.
+   *
+   * @param dir directory to list
+   * @return listing in progress, or null if the directory was not prefetched
+   */
+  Future<RemoteIterator<FileStatus>> takePrefetchedListing(FtpFile dir) {
+    if (prefetchDir == null || !prefetchDir.equals(new Path(dir.getAbsolutePath()))) {
+      return null;
+    }
+    Future<RemoteIterator<FileStatus>> listing = prefetchedListing;
+    prefetchDir = null;
+    prefetchedListing = null;
+    return listing;
+  }
+
+  private void clearPrefetchedListing() {
+    if (prefetchedListing != null && !prefetchedListing.isDone()) {
+      prefetchedListing.cancel(false);
+    }
+    prefetchDir = null;
+    prefetchedListing = null;
+  }
+
+  /**
+   * Checks if the argument contains glob characters.
+   */
+  public static boolean isGlob(String file) {
+    if (file == null) {
+      return false;
+    }
+    for (int i = 0; i < file.length(); i++) {
+      char c = file.charAt(i);
+      if (c == '*' || c == '?' || c == '[' || c == '{') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get files matching the glob pattern. The pattern is expanded by HDFS in
+   * one call, for all levels of the pattern. HDFS may expand it as the
+   * superuser, so matches in directories the user can't list, or below
+   * directories the user can't traverse, are left out here.
+   *
+   * @param pattern glob pattern, absolute or relative to the current directory
+   * @return matching files, empty if nothing matches, null if the pattern
+   * can't be expanded
+   */
+  public RemoteIterator<FtpFile> globFiles(String pattern) {
+    try {
+      FileStatus[] matches = HdfsOverFtpSystem.globStatus(
+              new Path(getPath(pattern)), new ListableParentFilter(), user);
+      if (matches == null) {
+        matches = new FileStatus[0];
+      }
+      return HdfsFileObject.toFiles(HdfsDirectoryIterator.of(matches), user);
+    } catch (IOException e) {
+      log.debug("glob " + pattern, e);
+      return null;
+    }
+  }
+
+  /**
+   * Accepts paths whose parent directory the user can list: the parent is
+   * readable and it and all its ancestors are traversable. The check is done
+   * once per directory.
+   */
+  private class ListableParentFilter implements PathFilter {
+
+    private final Map<Path, Boolean> readable = new HashMap<Path, Boolean>();
+    private final Map<Path, Boolean> traversable = new HashMap<Path, Boolean>();
+
+    public boolean accept(Path path) {
+      Path parent = path.getParent();
+      if (parent == null) {
+        return true;
+      }
+      Boolean allowed = readable.get(parent);
+      if (allowed == null) {
+        allowed = new HdfsFileObject(parent.toUri().getPath(), user).isReadable()
+                && isTraversable(parent);
+        readable.put(parent, allowed);
+      }
+      return allowed;
+    }
+
+    private boolean isTraversable(Path dir) {
+      if (dir == null) {
+        return true;
+      }
+      Boolean allowed = traversable.get(dir);
+      if (allowed == null) {
+        allowed = new HdfsFileObject(dir.toUri().getPath(), user).isTraversable()
+                && isTraversable(dir.getParent());
+        traversable.put(dir, allowed);
+      }
+      return allowed;
     }
-    return new HdfsFileObject(path, user);
   }
 
   /**
    * Change directory.
    */
   public boolean changeWorkingDirectory(String dir) {
-    String path;
-    if (dir.startsWith("/")) {
-      path = dir;
-    } else if (currDir.length() > 1) {
-      path = currDir + "/" + dir;
-    } else {
-      path = "/" + dir;
-    }
+    String path = getPath(dir);
     HdfsFileObject file = new HdfsFileObject(path, user);
     if (file.isDirectory() && file.isReadable()) {
       currDir = path;
+      prefetchListing();
       return true;
     } else {
       return false;
     }
   }
 
+  /**
+   * Start listing the current directory if prefetching is enabled
+   */
+  private void prefetchListing() {
+    clearPrefetchedListing();
+    HdfsListingPrefetcher prefetcher = HdfsOverFtpSystem.getListingPrefetcher();
+    if (prefetcher != null) {
+      Path dir = new Path(currDir);
+      prefetchedListing = prefetcher.prefetch(dir, user);
+      if (prefetchedListing != null) {
+        prefetchDir = dir;
+      }
+    }
+  }
+
   /**
    * Is the file content random accessible?
    */
@@ -112,8 +287,9 @@ public class HdfsFileSystemView implements FileSystemView {
   }
 
   /**
-   * Dispose file system view - does nothing.
+   * Dispose file system view - drops the prefetched listing.
    */
   public void dispose() {
+    clearPrefetchedListing();
   }
 }
@@ -0,0 +1,128 @@
+package com.spright.hof;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSInotifyEventInputStream;
+import org.apache.hadoop.hdfs.client.HdfsAdmin;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.apache.hadoop.hdfs.inotify.MissingEventsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background thread which follows the HDFS inotify stream and evicts changed
+ * paths from the status cache, so changes made by other HDFS clients become
+ * visible before the cached entries expire
+ */
+public class HdfsInotifyTailer implements Runnable {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsInotifyTailer.class);
+
+  private final static long POLL_SECONDS = 1;
+  private final static long RETRY_MILLIS = 5000;
+
+  private final HdfsAdmin admin;
+  private final HdfsFileStatusCache cache;
+  private volatile boolean running = true;
+
+  /**
+   * Constructs HdfsInotifyTailer
+   *
+   * @param admin HDFS admin of the cluster to follow, it needs superuser rights
+   * @param cache cache to evict changed paths from
+   */
+  public HdfsInotifyTailer(HdfsAdmin admin, HdfsFileStatusCache cache) {
+    this.admin = admin;
+    this.cache = cache;
+  }
+
+  /**
+   * Start following the inotify stream in a daemon thread
+   *
+   * @return the started thread
+   */
+  public Thread start() {
+    Thread thread = new Thread(this, "hof-inotify-tailer");
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Stop following the inotify stream
+   */
+  public void stop() {
+    running = false;
+  }
+
+  public void run() {
+    while (running) {
+      try {
+        DFSInotifyEventInputStream stream = admin.getInotifyEventStream();
+        log.info("Following HDFS inotify stream");
+        while (running) {
+          EventBatch batch = stream.poll(POLL_SECONDS, TimeUnit.SECONDS);
+          if (batch == null) {
+            continue;
+          }
+          for (Event event : batch.getEvents()) {
+            evict(event);
+          }
+        }
+      } catch (MissingEventsException e) {
+        log.warn("HDFS inotify events were lost, clearing the status cache", e);
+        cache.clear();
+      } catch (IOException e) {
+        log.warn("HDFS inotify stream failed, clearing the status cache", e);
+        cache.clear();
+        sleep(RETRY_MILLIS);
+      } catch (InterruptedException e) {
+        log.info("HDFS inotify tailer interrupted");
+        return;
+      }
+    }
+  }
+
+  /**
+   * Evict paths touched by the event
+   *
+   * @param event HDFS inotify event
+   */
+  void evict(Event event) {
+    switch (event.getEventType()) {
+      case CREATE:
+        cache.invalidate(new Path(((Event.CreateEvent) event).getPath()));
+        break;
+      case CLOSE:
+        cache.invalidate(new Path(((Event.CloseEvent) event).getPath()));
+        break;
+      case APPEND:
+        cache.invalidate(new Path(((Event.AppendEvent) event).getPath()));
+        break;
+      case METADATA:
+        cache.invalidate(new Path(((Event.MetadataUpdateEvent) event).getPath()));
+        break;
+      case RENAME:
+        Event.RenameEvent rename = (Event.RenameEvent) event;
+        cache.invalidateTree(new Path(rename.getSrcPath()));
+        cache.invalidateTree(new Path(rename.getDstPath()));
+        break;
+      case UNLINK:
+        cache.invalidateTree(new Path(((Event.UnlinkEvent) event).getPath()));
+        break;
+      default:
+        log.debug("Ignoring inotify event " + event.getEventType());
+    }
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      running = false;
+    }
+  }
+}
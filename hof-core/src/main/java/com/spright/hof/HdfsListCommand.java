@@ -0,0 +1,168 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.FileFormater;
+import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
+import org.apache.ftpserver.command.impl.listing.ListArgument;
+import org.apache.ftpserver.command.impl.listing.ListArgumentParser;
+import org.apache.ftpserver.command.impl.listing.NLSTFileFormater;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketException;
+
+/**
+ * LIST, NLST and MLSD commands which stream the listing of HDFS directories to
+ * the data connection batch by batch instead of building it in memory. Glob
+ * arguments are expanded by HDFS. Other file systems are handed to the default
+ * command.
+ */
+public class HdfsListCommand extends AbstractCommand {
+
+  private final Logger log = LoggerFactory.getLogger(HdfsListCommand.class);
+
+  private final String name;
+  private final AbstractCommand fallback;
+  private final boolean hdfsFacts;
+
+  /**
+   * Constructs HdfsListCommand
+   *
+   * @param name LIST, NLST or MLSD
+   * @param fallback default command for files not in HDFS
+   */
+  public HdfsListCommand(String name, AbstractCommand fallback) {
+    this(name, fallback, false);
+  }
+
+  /**
+   * Constructs HdfsListCommand
+   *
+   * @param name LIST, NLST or MLSD
+   * @param fallback default command for files not in HDFS
+   * @param hdfsFacts true to add the HDFS specific facts to MLSD
+   */
+  public HdfsListCommand(String name, AbstractCommand fallback, boolean hdfsFacts) {
+    this.name = name;
+    this.fallback = fallback;
+    this.hdfsFacts = hdfsFacts;
+  }
+
+  public void execute(final FtpIoSession session,
+          final FtpServerContext context, final FtpRequest request)
+          throws IOException, FtpException {
+
+    ListArgument parsedArg = ListArgumentParser.parse(request.getArgument());
+    FileSystemView view = session.getFileSystemView();
+    if (!(view instanceof HdfsFileSystemView)) {
+      fallback.execute(session, context, request);
+      return;
+    }
+    HdfsFileSystemView hdfsView = (HdfsFileSystemView) view;
+
+    try {
+      session.resetState();
+
+      RemoteIterator<FtpFile> files;
+      String glob = getGlob(parsedArg);
+      if (glob != null) {
+        files = hdfsView.globFiles(glob);
+      } else {
+        HdfsFileObject file;
+        if (parsedArg.getFile() == null) {
+          file = (HdfsFileObject) hdfsView.getWorkingDirectory();
+        } else {
+          file = (HdfsFileObject) hdfsView.getFile(parsedArg.getFile());
+        }
+        file.setPrefetchedListing(hdfsView.takePrefetchedListing(file));
+        if (!file.doesExist()) {
+          log.debug("Listing on a non-existing file");
+          session.write(LocalizedFtpReply.translate(session, request, context,
+                  FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN, name, null));
+          return;
+        }
+        files = file.streamFiles();
+      }
+
+      if (files == null) {
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN, name, null));
+        return;
+      }
+
+      session.write(LocalizedFtpReply.translate(session, request, context,
+              FtpReply.REPLY_150_FILE_STATUS_OKAY, name, null));
+
+      DataConnection dataConnection;
+      try {
+        dataConnection = session.getDataConnection().openConnection();
+      } catch (Exception e) {
+        log.debug("Exception getting the output data stream", e);
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, name, null));
+        return;
+      }
+
+      boolean failure = false;
+      try {
+        dataConnection.transferToClient(session.getFtpletSession(),
+                new HdfsListingInputStream(files, getFormater(session, parsedArg)));
+      } catch (SocketException ex) {
+        log.debug("Socket exception during data transfer", ex);
+        failure = true;
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED, name, null));
+      } catch (IOException ex) {
+        log.debug("IOException during data transfer", ex);
+        failure = true;
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN, name, null));
+      }
+
+      if (!failure) {
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, name, null));
+      }
+    } finally {
+      session.getDataConnection().closeDataConnection();
+    }
+  }
+
+  /**
+   * Get the glob pattern of the argument. The parser splits the last path
+   * component off as the pattern, the pattern is pushed down to HDFS as a
+   * whole including globs in the directory part.
+   *
+   * @return glob pattern or null if the argument has no glob
+   */
+  private static String getGlob(ListArgument parsedArg) {
+    String file = parsedArg.getFile() == null ? "" : parsedArg.getFile();
+    String pattern = parsedArg.getPattern() == null ? "" : parsedArg.getPattern();
+    String glob = file + pattern;
+    return HdfsFileSystemView.isGlob(glob) ? glob : null;
+  }
+
+  /**
+   * Get the line format of the command
+   */
+  private FileFormater getFormater(FtpIoSession session, ListArgument parsedArg) {
+    if ("MLSD".equals(name)) {
+      return new HdfsMlstFormater((String[]) session.getAttribute("MLST.types"), hdfsFacts);
+    }
+    if ("NLST".equals(name) && !parsedArg.hasOption('l')) {
+      return new NLSTFileFormater();
+    }
+    return new LISTFileFormater();
+  }
+}
@@ -0,0 +1,75 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.impl.listing.FileFormater;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.hadoop.fs.RemoteIterator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Input stream which formats directory entries into listing lines as they are
+ * read, so a listing can be sent while the directory is still being fetched
+ */
+public class HdfsListingInputStream extends InputStream {
+
+  private final static Charset UTF8 = Charset.forName("UTF-8");
+  private final static byte[] EMPTY = new byte[0];
+
+  private final RemoteIterator<FtpFile> files;
+  private final FileFormater formater;
+
+  private byte[] line = EMPTY;
+  private int pos = 0;
+
+  /**
+   * Constructs HdfsListingInputStream
+   *
+   * @param files entries to list
+   * @param formater formats one entry into a listing line
+   */
+  public HdfsListingInputStream(RemoteIterator<FtpFile> files, FileFormater formater) {
+    this.files = files;
+    this.formater = formater;
+  }
+
+  /**
+   * Format the next entry if the current line is used up
+   *
+   * @return false if there are no more entries
+   */
+  private boolean fill() throws IOException {
+    while (pos >= line.length) {
+      if (!files.hasNext()) {
+        return false;
+      }
+      line = formater.format(files.next()).getBytes(UTF8);
+      pos = 0;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return line[pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    int count = 0;
+    while (count < len && fill()) {
+      int n = Math.min(len - count, line.length - pos);
+      System.arraycopy(line, pos, b, off + count, n);
+      pos += n;
+      count += n;
+    }
+    return count == 0 ? -1 : count;
+  }
+}
@@ -0,0 +1,67 @@
+package com.spright.hof;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts directory listings in the background, so the listing which usually
+ * follows a change of the working directory is already on its way when the
+ * client asks for it. Only the first batch of the listing is fetched ahead.
+ */
+public class HdfsListingPrefetcher {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsListingPrefetcher.class);
+
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Constructs HdfsListingPrefetcher
+   *
+   * @param threads number of listings fetched at the same time
+   * @param queueSize number of listings waiting for a thread, more are not
+   * prefetched
+   */
+  public HdfsListingPrefetcher(int threads, int queueSize) {
+    executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hof-prefetch-%d").build());
+  }
+
+  /**
+   * Start listing the directory
+   *
+   * @param path directory to list
+   * @param user FTP user of the session which asked for the listing
+   * @return listing in progress, or null if the prefetcher is busy
+   */
+  public Future<RemoteIterator<FileStatus>> prefetch(final Path path, final HdfsUser user) {
+    try {
+      return executor.submit(new Callable<RemoteIterator<FileStatus>>() {
+        public RemoteIterator<FileStatus> call() throws Exception {
+          return HdfsOverFtpSystem.listStatusIterator(path, user);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      log.debug("Prefetcher is busy, not prefetching " + path);
+      return null;
+    }
+  }
+
+  /**
+   * Stop the prefetch threads
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,326 @@
+package com.spright.hof;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.protocol.BlockLocalPathInfo;
+import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.util.DataChecksum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Input stream which reads blocks stored on the local DataNode straight from
+ * their block files, without the DataNode data transfer protocol and the DFS
+ * client buffers in between. Block files are read a few checksum chunks at a
+ * time and verified against the checksums in their meta files. A replica
+ * failing verification is reported to the NameNode and the rest of the block
+ * is read through HDFS, which reads another replica. Blocks without a local
+ * replica, and files still being written, are read through HDFS.
+ */
+public class HdfsLocalBlockInputStream extends InputStream {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsLocalBlockInputStream.class);
+
+  // bytes of a block file read and verified at a time
+  private final static int VERIFY_BYTES = 65536;
+
+  private final DistributedFileSystem dfs;
+  private final Path path;
+  private final Configuration conf;
+  private final List<LocatedBlock> blocks;
+  private final long length;
+  private final boolean underConstruction;
+
+  private long position;
+  private long segmentEnd = -1;
+  private LocalBlock blockFile = null;
+  private FSDataInputStream remote = null;
+  private long localBytes = 0;
+  private long remoteBytes = 0;
+
+  /**
+   * Constructs HdfsLocalBlockInputStream
+   *
+   * @param dfs filesystem to locate the blocks with
+   * @param path file to read
+   * @param position offset to start reading at
+   * @throws IOException if the blocks can't be located
+   */
+  public HdfsLocalBlockInputStream(DistributedFileSystem dfs, Path path, long position)
+          throws IOException {
+    this.dfs = dfs;
+    this.path = path;
+    this.conf = dfs.getConf();
+    this.position = position;
+    LocatedBlocks located = dfs.getClient().getLocatedBlocks(path.toUri().getPath(), 0,
+            Long.MAX_VALUE);
+    this.underConstruction = located.isUnderConstruction();
+    // the length of a file being written is only known by the DataNodes
+    this.blocks = underConstruction ? Collections.<LocatedBlock>emptyList()
+            : located.getLocatedBlocks();
+    this.length = located.getFileLength();
+  }
+
+  /**
+   * Start the segment at the current position, a local block file if there
+   * is one, otherwise HDFS up to the end of the block
+   *
+   * @return false at the end of the file
+   */
+  private boolean nextSegment() {
+    closeBlockFile();
+    if (!underConstruction && position >= length) {
+      return false;
+    }
+    for (LocatedBlock block : blocks) {
+      long start = block.getStartOffset();
+      if (position >= start && position < start + block.getBlockSize()) {
+        segmentEnd = start + block.getBlockSize();
+        blockFile = openBlockFile(block, position - start);
+        return true;
+      }
+    }
+    // past the located blocks HDFS knows where the file ends
+    segmentEnd = Long.MAX_VALUE;
+    return true;
+  }
+
+  /**
+   * Open the block file of a local replica
+   *
+   * @return block file positioned at the offset, or null if there is no local
+   * replica
+   */
+  private LocalBlock openBlockFile(LocatedBlock block, long offset) {
+    int timeout = conf.getInt(DFSConfigKeys.DFS_CLIENT_SOCKET_TIMEOUT_KEY, 60000);
+    for (DatanodeInfo datanode : block.getLocations()) {
+      if (!isLocal(datanode)) {
+        continue;
+      }
+      ClientDatanodeProtocol proxy = null;
+      try {
+        proxy = DFSUtil.createClientDatanodeProtocolProxy(datanode, conf, timeout, false);
+        BlockLocalPathInfo info = proxy.getBlockLocalPathInfo(block.getBlock(),
+                block.getBlockToken());
+        return new LocalBlock(block, datanode, info, offset);
+      } catch (IOException e) {
+        log.debug("No local block file for " + block.getBlock() + " on " + datanode, e);
+      } finally {
+        if (proxy != null) {
+          RPC.stopProxy(proxy);
+        }
+      }
+    }
+    return null;
+  }
+
+  private static boolean isLocal(DatanodeInfo datanode) {
+    try {
+      return NetUtils.isLocalAddress(InetAddress.getByName(datanode.getIpAddr()));
+    } catch (UnknownHostException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n == 1 ? b[0] & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (position >= segmentEnd && !nextSegment()) {
+      return -1;
+    }
+    int max = (int) Math.min(len, segmentEnd - position);
+    if (blockFile != null) {
+      try {
+        int n = blockFile.read(b, off, max);
+        if (n > 0) {
+          position += n;
+          localBytes += n;
+          return n;
+        }
+        // the block file is shorter than the block, read the rest from HDFS
+        log.debug("Block file of " + path + " ended early at " + position);
+      } catch (ChecksumException e) {
+        log.warn("Local replica of " + path + " is corrupt, reading it through HDFS", e);
+        blockFile.reportCorrupt();
+      }
+      closeBlockFile();
+    }
+    if (remote == null) {
+      remote = dfs.open(path);
+    }
+    if (remote.getPos() != position) {
+      remote.seek(position);
+    }
+    int n = remote.read(b, off, max);
+    if (n < 0) {
+      return -1;
+    }
+    position += n;
+    remoteBytes += n;
+    return n;
+  }
+
+  private void closeBlockFile() {
+    if (blockFile != null) {
+      blockFile.close();
+      blockFile = null;
+    }
+  }
+
+  /**
+   * Get the number of bytes read from local block files
+   *
+   * @return bytes read locally
+   */
+  public long getLocalBytes() {
+    return localBytes;
+  }
+
+  /**
+   * Get the number of bytes read through HDFS
+   *
+   * @return bytes read through HDFS
+   */
+  public long getRemoteBytes() {
+    return remoteBytes;
+  }
+
+  @Override
+  public void close() throws IOException {
+    log.info("Read " + (localBytes + remoteBytes) + " bytes of " + path + ": "
+            + localBytes + " from local block files, " + remoteBytes + " through HDFS");
+    closeBlockFile();
+    if (remote != null) {
+      remote.close();
+      remote = null;
+    }
+  }
+
+  /**
+   * Block file of a local replica, read whole checksum chunks at a time which
+   * are verified against its meta file before they are returned
+   */
+  private class LocalBlock {
+
+    private final LocatedBlock block;
+    private final DatanodeInfo datanode;
+    private FileInputStream data = null;
+    private DataInputStream meta = null;
+    private DataChecksum checksum;
+    private byte[] buffer;
+    private byte[] sums;
+    private int bufferPos = 0;
+    private int bufferLen = 0;
+    // offset in the block of the next chunk to read
+    private long chunkOffset;
+    // bytes of the first chunk before the requested offset
+    private int skip;
+
+    LocalBlock(LocatedBlock block, DatanodeInfo datanode, BlockLocalPathInfo info, long offset)
+            throws IOException {
+      this.block = block;
+      this.datanode = datanode;
+      try {
+        data = new FileInputStream(info.getBlockPath());
+        meta = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(info.getMetaPath()), VERIFY_BYTES / 64));
+        checksum = BlockMetadataHeader.readHeader(meta).getChecksum();
+        int bytesPerChecksum = checksum.getBytesPerChecksum();
+        long chunk = offset / bytesPerChecksum;
+        chunkOffset = chunk * bytesPerChecksum;
+        skip = (int) (offset - chunkOffset);
+        data.getChannel().position(chunkOffset);
+        IOUtils.skipFully(meta, chunk * checksum.getChecksumSize());
+        int chunks = Math.max(1, VERIFY_BYTES / bytesPerChecksum);
+        buffer = new byte[chunks * bytesPerChecksum];
+        sums = new byte[chunks * checksum.getChecksumSize()];
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    int read(byte[] b, int off, int len) throws IOException {
+      if (bufferPos >= bufferLen && !fill()) {
+        return -1;
+      }
+      int n = Math.min(len, bufferLen - bufferPos);
+      System.arraycopy(buffer, bufferPos, b, off, n);
+      bufferPos += n;
+      return n;
+    }
+
+    /**
+     * Read and verify the next chunks
+     *
+     * @return false at the end of the block file
+     */
+    private boolean fill() throws IOException {
+      int n = 0;
+      while (n < buffer.length) {
+        int read = data.read(buffer, n, buffer.length - n);
+        if (read < 0) {
+          break;
+        }
+        n += read;
+      }
+      if (n == 0) {
+        return false;
+      }
+      int bytesPerChecksum = checksum.getBytesPerChecksum();
+      int sumsLen = (n + bytesPerChecksum - 1) / bytesPerChecksum * checksum.getChecksumSize();
+      meta.readFully(sums, 0, sumsLen);
+      checksum.verifyChunkedSums(ByteBuffer.wrap(buffer, 0, n), ByteBuffer.wrap(sums, 0, sumsLen),
+              path.toString(), block.getStartOffset() + chunkOffset);
+      chunkOffset += n;
+      bufferPos = skip;
+      bufferLen = n;
+      skip = 0;
+      return bufferPos < bufferLen;
+    }
+
+    void reportCorrupt() {
+      try {
+        dfs.getClient().reportChecksumFailure(path.toUri().getPath(), block.getBlock(), datanode);
+      } catch (RuntimeException e) {
+        log.debug("Can't report the corrupt replica of " + block.getBlock(), e);
+      }
+    }
+
+    void close() {
+      IOUtils.cleanup(null, data, meta);
+    }
+  }
+}
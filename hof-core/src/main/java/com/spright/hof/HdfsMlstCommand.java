@@ -0,0 +1,72 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.listing.ListArgument;
+import org.apache.ftpserver.command.impl.listing.ListArgumentParser;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * MLST command which gives the facts of an HDFS object from a single status.
+ * Other file systems are handed to the default command.
+ */
+public class HdfsMlstCommand extends AbstractCommand {
+
+  private final Logger log = LoggerFactory.getLogger(HdfsMlstCommand.class);
+
+  private final AbstractCommand fallback;
+  private final boolean hdfsFacts;
+
+  /**
+   * Constructs HdfsMlstCommand
+   *
+   * @param fallback default command for files not in HDFS
+   * @param hdfsFacts true to add the HDFS specific facts
+   */
+  public HdfsMlstCommand(AbstractCommand fallback, boolean hdfsFacts) {
+    this.fallback = fallback;
+    this.hdfsFacts = hdfsFacts;
+  }
+
+  public void execute(final FtpIoSession session,
+          final FtpServerContext context, final FtpRequest request)
+          throws IOException, FtpException {
+
+    FileSystemView view = session.getFileSystemView();
+    if (!(view instanceof HdfsFileSystemView)) {
+      fallback.execute(session, context, request);
+      return;
+    }
+
+    session.resetState();
+
+    ListArgument parsedArg = ListArgumentParser.parse(request.getArgument());
+    FtpFile file;
+    if (parsedArg.getFile() == null) {
+      file = view.getWorkingDirectory();
+    } else {
+      file = view.getFile(parsedArg.getFile());
+    }
+
+    if (file != null && file.doesExist()) {
+      HdfsMlstFormater formater = new HdfsMlstFormater(
+              (String[]) session.getAttribute("MLST.types"), hdfsFacts);
+      session.write(LocalizedFtpReply.translate(session, request, context,
+              FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "MLST", formater.format(file)));
+    } else {
+      log.debug("MLST on a non-existing file");
+      session.write(LocalizedFtpReply.translate(session, request, context,
+              FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS, "MLST", null));
+    }
+  }
+}
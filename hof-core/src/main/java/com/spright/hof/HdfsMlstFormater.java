@@ -0,0 +1,99 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.impl.listing.FileFormater;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.hadoop.fs.FileStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * MLST/MLSD line format which takes all facts from the status snapshot of the
+ * HDFS object. Besides the standard facts it adds UNIX.owner, UNIX.group and
+ * UNIX.mode, and optionally the HDFS replication, block size and access time.
+ * The standard facts can be selected with OPTS MLST, the others are always
+ * given.
+ */
+public class HdfsMlstFormater implements FileFormater {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsMlstFormater.class);
+
+  private final static String[] DEFAULT_TYPES = {"Size", "Modify", "Type", "Perm"};
+
+  private final String[] selectedTypes;
+  private final boolean hdfsFacts;
+  private final SimpleDateFormat dateFormat;
+
+  /**
+   * Constructs HdfsMlstFormater
+   *
+   * @param selectedTypes standard facts selected by OPTS MLST, null for all
+   * @param hdfsFacts true to add the HDFS specific facts
+   */
+  public HdfsMlstFormater(String[] selectedTypes, boolean hdfsFacts) {
+    this.selectedTypes = selectedTypes == null ? DEFAULT_TYPES : selectedTypes.clone();
+    this.hdfsFacts = hdfsFacts;
+    this.dateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+    this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+  }
+
+  public String format(FtpFile file) {
+    FileStatus status = null;
+    if (file instanceof HdfsFileObject) {
+      try {
+        status = ((HdfsFileObject) file).getFileStatus();
+      } catch (IOException e) {
+        log.debug("No status for " + file.getAbsolutePath(), e);
+      }
+    }
+
+    StringBuilder sb = new StringBuilder();
+    boolean isDirectory = status != null ? status.isDirectory() : file.isDirectory();
+    for (String type : selectedTypes) {
+      if ("size".equalsIgnoreCase(type)) {
+        sb.append("Size=").append(status != null ? status.getLen() : file.getSize()).append(';');
+      } else if ("modify".equalsIgnoreCase(type)) {
+        long modified = status != null ? status.getModificationTime() : file.getLastModified();
+        sb.append("Modify=").append(dateFormat.format(new Date(modified))).append(';');
+      } else if ("type".equalsIgnoreCase(type)) {
+        sb.append("Type=").append(isDirectory ? "dir" : "file").append(';');
+      } else if ("perm".equalsIgnoreCase(type)) {
+        sb.append("Perm=").append(getPerm(file, isDirectory)).append(';');
+      }
+    }
+    if (status != null) {
+      sb.append("UNIX.owner=").append(status.getOwner()).append(';');
+      sb.append("UNIX.group=").append(status.getGroup()).append(';');
+      sb.append("UNIX.mode=0").append(Integer.toOctalString(status.getPermission().toShort() & 0777))
+              .append(';');
+      if (hdfsFacts && !isDirectory) {
+        sb.append("HDFS.replication=").append(status.getReplication()).append(';');
+        sb.append("HDFS.blocksize=").append(status.getBlockSize()).append(';');
+      }
+      if (hdfsFacts) {
+        sb.append("HDFS.atime=").append(dateFormat.format(new Date(status.getAccessTime()))).append(';');
+      }
+    }
+    sb.append(' ').append(file.getName()).append("\r\n");
+    return sb.toString();
+  }
+
+  /**
+   * Get the RFC 3659 permission fact. For HDFS objects both checks are done
+   * on the status snapshot.
+   */
+  private static String getPerm(FtpFile file, boolean isDirectory) {
+    StringBuilder perm = new StringBuilder();
+    if (file.isReadable()) {
+      perm.append(isDirectory ? "el" : "r");
+    }
+    if (file.isWritable()) {
+      perm.append(isDirectory ? "cdfmp" : "adfw");
+    }
+    return perm.toString();
+  }
+}
@@ -0,0 +1,74 @@
+package com.spright.hof;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mount table which maps FTP path prefixes to HDFS clusters or nameservices,
+ * similar to ViewFs. A path is served by the mount with the longest matching
+ * prefix and keeps the same path on that cluster. Paths below no mount are
+ * served by the default hdfs-uri.
+ */
+public class HdfsMountTable {
+
+  private final Map<String, String> mounts = new HashMap<String, String>();
+
+  /**
+   * Mount a cluster under a path prefix
+   *
+   * @param prefix absolute path prefix
+   * @param uri HDFS uri of the cluster serving the prefix
+   */
+  public void addMount(String prefix, String uri) {
+    mounts.put(normalize(prefix), uri);
+  }
+
+  /**
+   * Find the cluster serving the path
+   *
+   * @param path absolute path
+   * @return HDFS uri of the mount with the longest matching prefix, or null if
+   * the path is below no mount
+   */
+  public String resolve(String path) {
+    if (mounts.isEmpty()) {
+      return null;
+    }
+    // walk up from the path itself, so the longest prefix is found first
+    for (String prefix = normalize(path); prefix != null; prefix = getParent(prefix)) {
+      String uri = mounts.get(prefix);
+      if (uri != null) {
+        return uri;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks if the table has no mounts
+   *
+   * @return true if all paths are served by the default hdfs-uri
+   */
+  public boolean isEmpty() {
+    return mounts.isEmpty();
+  }
+
+  private static String normalize(String path) {
+    if (!path.startsWith("/")) {
+      throw new IllegalArgumentException("Mount path has to be absolute: " + path);
+    }
+    int end = path.length();
+    while (end > 1 && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    return path.substring(0, end);
+  }
+
+  private static String getParent(String path) {
+    if (path.equals("/")) {
+      return null;
+    }
+    int slash = path.lastIndexOf('/');
+    return slash == 0 ? "/" : path.substring(0, slash);
+  }
+}
@@ -0,0 +1,225 @@
+package com.spright.hof;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open files shared by concurrent downloads of the same path, as made by
+ * segmented download clients. The downloads read the shared stream with
+ * positional reads, so they don't wait on each other's seeks, and the file is
+ * opened and its blocks located only once. A file is closed when its last
+ * download is done.
+ */
+public class HdfsOpenFileCache {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsOpenFileCache.class);
+
+  private final Map<String, OpenFile> files = new HashMap<String, OpenFile>();
+  private final AtomicLong opens = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+
+  /**
+   * Get the shared stream of the file, opening it if no download has it open
+   *
+   * @param path file to read
+   * @param user FTP user of the download
+   * @return handle on the open file, to be closed when the download is done
+   * @throws IOException if the file can't be opened
+   */
+  public Handle open(Path path, HdfsUser user) throws IOException {
+    String key = key(path, user);
+    OpenFile file;
+    synchronized (this) {
+      file = files.get(key);
+      if (file == null) {
+        file = new OpenFile(key, path, user);
+        files.put(key, file);
+      } else {
+        hits.incrementAndGet();
+      }
+      file.refs++;
+    }
+    try {
+      file.openStream();
+    } catch (IOException e) {
+      release(file);
+      throw e;
+    }
+    return new Handle(file);
+  }
+
+  /**
+   * Get the key of the file. With proxy users the NameNode checks the
+   * permissions when a file is opened, so users don't share open files.
+   */
+  private static String key(Path path, HdfsUser user) {
+    String file = HdfsFileStatusCache.key(path).toString();
+    return HdfsOverFtpSystem.isProxyUser() ? user.getName() + ":" + file : file;
+  }
+
+  private void release(OpenFile file) {
+    boolean last;
+    synchronized (this) {
+      last = --file.refs == 0;
+      if (last && files.get(file.key) == file) {
+        files.remove(file.key);
+      }
+    }
+    if (last) {
+      file.closeStream();
+    }
+  }
+
+  /**
+   * Stop sharing the open file because it has been changed. Downloads
+   * already reading it go on with the stream they have.
+   *
+   * @param path changed file
+   */
+  public synchronized void invalidate(Path path) {
+    Path file = HdfsFileStatusCache.key(path);
+    Iterator<OpenFile> it = files.values().iterator();
+    while (it.hasNext()) {
+      if (it.next().path.equals(file)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Stop sharing the open files at or below the path
+   *
+   * @param path changed file or directory
+   */
+  public synchronized void invalidateTree(Path path) {
+    String root = HdfsFileStatusCache.key(path).toString();
+    String prefix = root.endsWith("/") ? root : root + "/";
+    Iterator<OpenFile> it = files.values().iterator();
+    while (it.hasNext()) {
+      String file = it.next().path.toString();
+      if (file.equals(root) || file.startsWith(prefix)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Get the number of files opened
+   *
+   * @return number of opens
+   */
+  public long getOpens() {
+    return opens.get();
+  }
+
+  /**
+   * Get the number of downloads which shared a file opened by another one
+   *
+   * @return number of hits
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Get the number of files open at the moment
+   *
+   * @return number of shared files
+   */
+  public synchronized int size() {
+    return files.size();
+  }
+
+  /**
+   * Hold of a download on an open file. Closing the handle ends it.
+   */
+  public class Handle implements Closeable {
+
+    private final OpenFile file;
+    private boolean closed = false;
+
+    Handle(OpenFile file) {
+      this.file = file;
+    }
+
+    /**
+     * Get the shared stream, to be read with positional reads only
+     *
+     * @return open stream of the file
+     */
+    public FSDataInputStream getStream() {
+      return file.stream;
+    }
+
+    @Override
+    public void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+      }
+      release(file);
+    }
+  }
+
+  /**
+   * File opened once for all the downloads holding it
+   */
+  private class OpenFile {
+
+    private final String key;
+    private final Path path;
+    private final HdfsUser user;
+    private int refs = 0;
+    private HdfsProxyFileSystems.Lease lease = null;
+    private volatile FSDataInputStream stream = null;
+
+    OpenFile(String key, Path path, HdfsUser user) {
+      this.key = key;
+      this.path = HdfsFileStatusCache.key(path);
+      this.user = user;
+    }
+
+    private synchronized void openStream() throws IOException {
+      if (stream != null) {
+        return;
+      }
+      // the file may stay open after the download which opened it is done
+      lease = HdfsOverFtpSystem.leaseDfs(path, user);
+      try {
+        stream = lease.getDfs().open(path);
+        opens.incrementAndGet();
+        log.debug("Opened shared " + path);
+      } catch (IOException e) {
+        lease.release();
+        lease = null;
+        throw e;
+      }
+    }
+
+    private synchronized void closeStream() {
+      if (stream == null) {
+        return;
+      }
+      try {
+        stream.close();
+      } catch (IOException e) {
+        log.debug("Error closing shared " + path, e);
+      } finally {
+        stream = null;
+        lease.release();
+        lease = null;
+      }
+    }
+  }
+}
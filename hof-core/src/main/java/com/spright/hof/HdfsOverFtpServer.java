@@ -7,8 +7,25 @@ import org.apache.log4j.Logger;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.CommandFactoryFactory;
+import org.apache.ftpserver.command.impl.ALLO;
+import org.apache.ftpserver.command.impl.APPE;
+import org.apache.ftpserver.command.impl.LIST;
+import org.apache.ftpserver.command.impl.MLSD;
+import org.apache.ftpserver.command.impl.MLST;
+import org.apache.ftpserver.command.impl.NLST;
+import org.apache.ftpserver.command.impl.RETR;
+import org.apache.ftpserver.command.impl.STOR;
+import org.apache.ftpserver.command.impl.STOU;
 import org.apache.ftpserver.listener.ListenerFactory;
 
 /**
@@ -23,6 +40,7 @@ public class HdfsOverFtpServer {
   private static String passivePorts = null;
   private static String sslPassivePorts = null;
   private static String hdfsUri = null;
+  private static boolean mlstHdfsFacts = false;
 
   public static void main(String[] args) throws Exception {
     if (args.length != 2) {
@@ -81,7 +99,15 @@ public class HdfsOverFtpServer {
       }
     }
 
+    String haNameservice = props.getProperty("ha-nameservice");
+    if (haNameservice != null) {
+      loadHaConfig(props, haNameservice.trim());
+    }
+
     hdfsUri = props.getProperty("hdfs-uri");
+    if (hdfsUri == null && haNameservice != null) {
+      hdfsUri = "hdfs://" + haNameservice.trim();
+    }
     if (hdfsUri == null) {
       LOG.fatal("hdfs-uri is not set");
       System.exit(1);
@@ -93,6 +119,213 @@ public class HdfsOverFtpServer {
       System.exit(1);
     }
     HdfsOverFtpSystem.setSuperuser(superuser);
+
+    boolean shortCircuit = Boolean.parseBoolean(props.getProperty("short-circuit", "false"));
+    String domainSocketPath = props.getProperty("domain-socket-path");
+    if (shortCircuit && domainSocketPath == null) {
+      LOG.fatal("short-circuit is enabled but domain-socket-path is not set");
+      System.exit(1);
+    }
+    HdfsOverFtpSystem.setShortCircuit(shortCircuit, domainSocketPath,
+            (int) getLongProperty(props, "short-circuit-buffer-size", 0));
+
+    HdfsOverFtpSystem.setLocalBlockReads(
+            Boolean.parseBoolean(props.getProperty("local-block-reads", "false")));
+
+    HdfsOverFtpSystem.setHedgedReads(
+            (int) getLongProperty(props, "hedged-read-threads", 0),
+            getLongProperty(props, "hedged-read-threshold", 500),
+            (int) getLongProperty(props, "hedged-read-chunk-size", 1048576),
+            (int) getLongProperty(props, "hedged-read-chunk-pool-size", 256));
+
+    HdfsOverFtpSystem.setReadAhead(
+            (int) getLongProperty(props, "read-ahead-threads", 0),
+            (int) getLongProperty(props, "read-ahead-buffers", 4),
+            (int) getLongProperty(props, "read-ahead-buffer-size", 1048576),
+            (int) getLongProperty(props, "read-ahead-pool-size", 256));
+
+    HdfsOverFtpSystem.setOpenFileCache(
+            Boolean.parseBoolean(props.getProperty("open-file-cache", "false")));
+
+    HdfsOverFtpSystem.setSegmentedUploads(
+            Boolean.parseBoolean(props.getProperty("segmented-uploads", "false")),
+            getLongProperty(props, "segmented-upload-timeout", 3600000),
+            (int) getLongProperty(props, "segmented-upload-max-parts", 10000));
+
+    HdfsOverFtpSystem.setLeaseRecoveryTimeout(
+            getLongProperty(props, "lease-recovery-timeout", 60000));
+
+    HdfsMountTable mountTable = new HdfsMountTable();
+    for (String key : props.stringPropertyNames()) {
+      if (key.startsWith("mount.")) {
+        mountTable.addMount(key.substring("mount.".length()), props.getProperty(key).trim());
+      }
+    }
+    HdfsOverFtpSystem.setMountTable(mountTable);
+
+    HdfsOverFtpSystem.setUploadPolicy(loadUploadPolicy(props));
+
+    String clientPoolPolicy = props.getProperty("client-pool-policy", "session");
+    try {
+      HdfsOverFtpSystem.setClientPool(
+              (int) getLongProperty(props, "client-pool-size", 1),
+              HdfsClientPool.Policy.valueOf(clientPoolPolicy.trim().toUpperCase().replace('-', '_')));
+    } catch (IllegalArgumentException e) {
+      LOG.fatal("client-pool-policy is not session, user or round-robin: " + clientPoolPolicy);
+      System.exit(1);
+    }
+
+    HdfsOverFtpSystem.setStatusCache(
+            getLongProperty(props, "status-cache-size", 0),
+            getLongProperty(props, "status-cache-ttl", 5000),
+            getLongProperty(props, "status-cache-missing-ttl", 0));
+    HdfsOverFtpSystem.setStatusCacheInotify(
+            Boolean.parseBoolean(props.getProperty("status-cache-inotify", "false")));
+
+    mlstHdfsFacts = Boolean.parseBoolean(props.getProperty("mlst-hdfs-facts", "false"));
+
+    HdfsOverFtpSystem.setListingPrefetcher(
+            (int) getLongProperty(props, "listing-prefetch-threads", 0),
+            (int) getLongProperty(props, "listing-prefetch-queue", 100));
+
+    HdfsOverFtpSystem.setProxyUser(
+            Boolean.parseBoolean(props.getProperty("proxy-user", "false")),
+            getLongProperty(props, "proxy-user-idle", 600000));
+
+    String spoolDir = props.getProperty("spool-dir");
+    try {
+      HdfsOverFtpSystem.setUploadSpool(spoolDir == null ? null : new File(spoolDir.trim()),
+              getLongProperty(props, "spool-max-bytes", 10737418240L),
+              (int) getLongProperty(props, "spool-committers", 4),
+              getLongProperty(props, "spool-wait", 60000));
+    } catch (IOException e) {
+      LOG.fatal("Can't use the spool directory " + spoolDir, e);
+      System.exit(1);
+    }
+
+    String replicationJournal = props.getProperty("replication-queue-journal");
+    try {
+      HdfsOverFtpSystem.setReplicationQueue(
+              replicationJournal == null ? null : new File(replicationJournal.trim()),
+              (short) getLongProperty(props, "landing-replication", 1),
+              (int) getLongProperty(props, "replication-queue-rate", 50));
+    } catch (IOException e) {
+      LOG.fatal("Can't use the replication journal " + replicationJournal, e);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Load the NameNodes of the HA nameservice and the order for metadata reads
+   */
+  private static void loadHaConfig(Properties props, String nameservice) {
+    String namenodes = props.getProperty("ha-namenodes");
+    if (namenodes == null) {
+      LOG.fatal("ha-namenodes is not set");
+      System.exit(1);
+    }
+    Map<String, String> addresses = new LinkedHashMap<String, String>();
+    for (String namenode : namenodes.split(",")) {
+      String[] idAndAddress = namenode.trim().split("=", 2);
+      if (idAndAddress.length != 2) {
+        LOG.fatal("ha-namenodes has to be a list of id=host:port: " + namenodes);
+        System.exit(1);
+      }
+      addresses.put(idAndAddress[0].trim(), idAndAddress[1].trim());
+    }
+    HdfsOverFtpSystem.setHaNameservice(nameservice, addresses);
+
+    String readNamenodes = props.getProperty("ha-read-namenodes");
+    if (readNamenodes != null) {
+      List<String> order = new ArrayList<String>();
+      for (String id : readNamenodes.split(",")) {
+        if (!addresses.containsKey(id.trim())) {
+          LOG.fatal("ha-read-namenodes has an unknown NameNode: " + id);
+          System.exit(1);
+        }
+        order.add(id.trim());
+      }
+      HdfsOverFtpSystem.setStandbyReads(order, getLongProperty(props, "ha-read-lag", 60000));
+    }
+  }
+
+  /**
+   * Get an optional numeric property
+   *
+   * @return value of the property or defaultValue if it is not set
+   */
+  /**
+   * Load the upload-policy.&lt;rule&gt;.* rules, tried in the order of their
+   * names
+   */
+  private static HdfsUploadPolicy loadUploadPolicy(Properties props) {
+    Set<String> names = new TreeSet<String>();
+    for (String key : props.stringPropertyNames()) {
+      if (key.startsWith("upload-policy.") && key.indexOf('.', "upload-policy.".length()) > 0) {
+        names.add(key.substring("upload-policy.".length(), key.lastIndexOf('.')));
+      }
+    }
+    HdfsUploadPolicy policy = new HdfsUploadPolicy();
+    for (String name : names) {
+      String prefix = "upload-policy." + name + ".";
+      HdfsUploadPolicy.Rule rule = new HdfsUploadPolicy.Rule(name);
+      if (props.getProperty(prefix + "path") != null) {
+        rule.setPrefix(props.getProperty(prefix + "path").trim());
+      }
+      if (props.getProperty(prefix + "user") != null) {
+        rule.setUser(props.getProperty(prefix + "user").trim());
+      }
+      if (props.getProperty(prefix + "group") != null) {
+        rule.setGroup(props.getProperty(prefix + "group").trim());
+      }
+      rule.setMinSize(getLongProperty(props, prefix + "min-size", -1));
+      rule.setMaxSize(getLongProperty(props, prefix + "max-size", -1));
+      rule.setBlockSize(getLongProperty(props, prefix + "block-size", 0));
+      rule.setReplication((short) getLongProperty(props, prefix + "replication", 0));
+      rule.setBufferSize((int) getLongProperty(props, prefix + "buffer-size", 0));
+      if (props.getProperty(prefix + "storage-policy") != null) {
+        rule.setStoragePolicy(props.getProperty(prefix + "storage-policy").trim());
+      }
+      policy.addRule(rule);
+    }
+    return policy;
+  }
+
+  private static long getLongProperty(Properties props, String key, long defaultValue) {
+    String value = props.getProperty(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      LOG.fatal(key + " is not a number: " + value);
+      System.exit(1);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Create the command factory with the HDFS specific commands
+   *
+   * @return command factory
+   */
+  private static CommandFactory createCommandFactory() {
+    CommandFactoryFactory commandFactoryFactory = new CommandFactoryFactory();
+    commandFactoryFactory.addCommand("LIST", new HdfsListCommand("LIST", new LIST()));
+    commandFactoryFactory.addCommand("NLST", new HdfsListCommand("NLST", new NLST()));
+    commandFactoryFactory.addCommand("MLSD", new HdfsListCommand("MLSD", new MLSD(), mlstHdfsFacts));
+    commandFactoryFactory.addCommand("MLST", new HdfsMlstCommand(new MLST(), mlstHdfsFacts));
+    commandFactoryFactory.addCommand("RETR", new HdfsRetrCommand(new RETR()));
+    commandFactoryFactory.addCommand("ALLO", new HdfsAlloCommand(new ALLO()));
+    commandFactoryFactory.addCommand("STOR", new HdfsUploadCommand(new STOR()));
+    commandFactoryFactory.addCommand("STOU", new HdfsUploadCommand(new STOU()));
+    commandFactoryFactory.addCommand("APPE", new HdfsUploadCommand(new APPE()));
+    // SITE hands "SITE STATS" to the SITE_STATS command
+    commandFactoryFactory.addCommand("SITE_STATS", new HdfsSiteStatsCommand());
+    commandFactoryFactory.addCommand("SITE_SEGMENTS", new HdfsSiteSegmentsCommand());
+    commandFactoryFactory.addCommand("SITE_SPOOL", new HdfsSiteSpoolCommand());
+    return commandFactoryFactory.createCommandFactory();
   }
 
   /**
@@ -121,6 +354,7 @@ public class HdfsOverFtpServer {
     hdfsUserManagerFactory.setFile(userFile);
     serverFactory.setUserManager(hdfsUserManagerFactory.createUserManager());
     serverFactory.setFileSystem(new HdfsFileSystemManager(userFile));
+    serverFactory.setCommandFactory(createCommandFactory());
     FtpServer server = serverFactory.createServer();
     server.start();
   }
@@ -154,6 +388,7 @@ public class HdfsOverFtpServer {
     hdfsUserManagerFactory.setFile(userFile);
     serverFactory.setUserManager(hdfsUserManagerFactory.createUserManager());
     serverFactory.setFileSystem(new HdfsFileSystemManager(userFile));
+    serverFactory.setCommandFactory(createCommandFactory());
     FtpServer server = serverFactory.createServer();
     server.start();
 
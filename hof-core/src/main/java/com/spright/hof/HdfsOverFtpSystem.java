@@ -1,37 +1,290 @@
 package com.spright.hof;
 
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSHedgedReadMetrics;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.client.HdfsAdmin;
+import org.apache.hadoop.hdfs.server.namenode.ha.ConfiguredFailoverProxyProvider;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class to store DFS connection
  */
 public class HdfsOverFtpSystem {
 
-  private static DistributedFileSystem dfs = null;
+  private static volatile HdfsClientPool dfsOverride = null;
+  private static final Map<String, HdfsClientPool> clientPools =
+          new ConcurrentHashMap<String, HdfsClientPool>();
+  private static final Map<String, HdfsClientPool> readClientPools =
+          new ConcurrentHashMap<String, HdfsClientPool>();
+  private static int clientPoolSize = 1;
+  private static HdfsClientPool.Policy clientPoolPolicy = HdfsClientPool.Policy.SESSION;
 
   public static String HDFS_URI = "";
 
+  private static volatile HdfsMountTable mountTable = new HdfsMountTable();
+
+  private static String haNameservice = null;
+  private static Map<String, String> haNamenodes = null;
+  private static List<String> haReadNamenodes = null;
+  private static HdfsStandbyReads standbyReads = null;
+  // reads skip the read NameNodes for a while after they failed
+  private final static long READ_NAMENODES_RETRY_MILLIS = 10000;
+  private static volatile long readNamenodesFailed = 0;
+
+  private static boolean shortCircuit = false;
+  private static String domainSocketPath = null;
+  private static int shortCircuitBufferSize = 0;
+
+  private static boolean localBlockReads = false;
+
+  private static int hedgedReadThreads = 0;
+  private static long hedgedReadThresholdMillis = 500;
+  private static int hedgedReadChunkSize = 1048576;
+  private static HdfsBufferPool chunkPool = new HdfsBufferPool(hedgedReadChunkSize, 256, false);
+
   private static String superuser = "error";
   private static String supergroup = "supergroup";
 
+  private static HdfsFileStatusCache statusCache = null;
+  private static boolean statusCacheInotify = false;
+  private static HdfsInotifyTailer inotifyTailer = null;
+
+  private static HdfsListingPrefetcher listingPrefetcher = null;
+
+  private static HdfsReadAhead readAhead = null;
+
+  private static HdfsOpenFileCache openFileCache = null;
+
+  private static HdfsSegmentedUploads segmentedUploads = null;
+
+  // files written through this server, an open file not in here is recovered
+  // before appending to it
+  private static final Multiset<String> writing = ConcurrentHashMultiset.create();
+  private static long leaseRecoveryTimeoutMillis = 60000;
+
+  private static HdfsUploadSpool uploadSpool = null;
+
+  private static volatile HdfsUploadPolicy uploadPolicy = new HdfsUploadPolicy();
+
+  private static volatile HdfsReplicationQueue replicationQueue = null;
+
+  private static boolean proxyUser = false;
+  private static long proxyUserIdleMillis = 600000;
+  private static final Map<String, HdfsProxyFileSystems> proxyFileSystems =
+          new HashMap<String, HdfsProxyFileSystems>();
+
   private final static Logger log = LoggerFactory.getLogger(HdfsOverFtpSystem.class);
 
-  private static void hdfsInit() throws IOException {
-    dfs = new DistributedFileSystem();
+  static Configuration createConf() {
+    return createConf(false);
+  }
+
+  /**
+   * Create the client configuration
+   *
+   * @param readNamenodes true for the client of metadata reads, which only
+   * knows the read NameNodes
+   */
+  private static Configuration createConf(boolean readNamenodes) {
     Configuration conf = new Configuration();
     conf.set("hadoop.job.ugi", superuser + "," + supergroup);
+    if (haNameservice != null) {
+      conf.set("dfs.nameservices", haNameservice);
+      for (Map.Entry<String, String> namenode : haNamenodes.entrySet()) {
+        conf.set("dfs.namenode.rpc-address." + haNameservice + "." + namenode.getKey(),
+                namenode.getValue());
+      }
+      // the failover proxy provider doesn't keep the listed order (HDFS-6648),
+      // so the read client only gets the read NameNodes. Reads they fail are
+      // sent to the active NameNode by read()
+      Collection<String> namenodes = readNamenodes ? haReadNamenodes : haNamenodes.keySet();
+      conf.set("dfs.ha.namenodes." + haNameservice, StringUtils.join(",", namenodes));
+      conf.set("dfs.client.failover.proxy.provider." + haNameservice,
+              ConfiguredFailoverProxyProvider.class.getName());
+      if (readNamenodes) {
+        conf.setInt(DFSConfigKeys.DFS_CLIENT_FAILOVER_MAX_ATTEMPTS_KEY, namenodes.size());
+        conf.setInt("ipc.client.connect.max.retries", 1);
+      }
+    }
+    if (hedgedReadThreads > 0) {
+      conf.setInt(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE, hedgedReadThreads);
+      conf.setLong(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS,
+              hedgedReadThresholdMillis);
+    }
+    if (shortCircuit) {
+      conf.setBoolean(DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_KEY, true);
+      conf.set(DFSConfigKeys.DFS_DOMAIN_SOCKET_PATH_KEY, domainSocketPath);
+      if (shortCircuitBufferSize > 0) {
+        conf.setInt(DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_BUFFER_SIZE_KEY,
+                shortCircuitBufferSize);
+      }
+    }
+    return conf;
+  }
+
+  private static synchronized HdfsClientPool hdfsInit(String hdfsUri) throws IOException {
+    // concurrent first logins must not each connect a pool
+    HdfsClientPool pool = clientPools.get(hdfsUri);
+    if (pool != null) {
+      return pool;
+    }
+    Configuration conf = createConf();
     try {
-      dfs.initialize(new URI(HDFS_URI), conf);
+      URI uri = new URI(hdfsUri);
+      pool = new HdfsClientPool(uri, conf, clientPoolSize, clientPoolPolicy);
+      clientPools.put(hdfsUri, pool);
+      // changes are only followed on the default cluster
+      if (hdfsUri.equals(HDFS_URI) && statusCache != null && statusCacheInotify) {
+        startInotifyTailer(new HdfsAdmin(uri, conf));
+      }
     } catch (URISyntaxException e) {
       log.error("DFS Initialization error", e);
+      throw new IOException("Invalid hdfs uri " + hdfsUri, e);
+    }
+    return pool;
+  }
+
+  /**
+   * Get the client pool of the cluster serving the path
+   *
+   * @param path path, null for the default cluster
+   */
+  private static HdfsClientPool getClientPool(Path path) throws IOException {
+    HdfsClientPool pool = dfsOverride;
+    if (pool != null) {
+      return pool;
+    }
+    String uri = getUri(path);
+    pool = clientPools.get(uri);
+    if (pool == null) {
+      pool = hdfsInit(uri);
+    }
+    return pool;
+  }
+
+  private static synchronized HdfsClientPool readInit(String hdfsUri) throws IOException {
+    HdfsClientPool pool = readClientPools.get(hdfsUri);
+    if (pool != null) {
+      return pool;
+    }
+    try {
+      pool = new HdfsClientPool(new URI(hdfsUri), createConf(true), clientPoolSize,
+              clientPoolPolicy);
+    } catch (URISyntaxException e) {
+      throw new IOException("Invalid hdfs uri " + hdfsUri, e);
+    }
+    readClientPools.put(hdfsUri, pool);
+    return pool;
+  }
+
+  /**
+   * Get the client pool for metadata reads of the path. Reads go to the
+   * standby NameNode first if standby reads are enabled for the cluster and
+   * the path hasn't been changed recently.
+   *
+   * @param path path to read
+   */
+  private static HdfsClientPool getReadClientPool(Path path) throws IOException {
+    String uri = getUri(path);
+    if (standbyReads == null || dfsOverride != null || !isHaUri(uri)
+            || standbyReads.isChanged(path)
+            || System.currentTimeMillis() - readNamenodesFailed < READ_NAMENODES_RETRY_MILLIS) {
+      return getClientPool(path);
+    }
+    HdfsClientPool pool = readClientPools.get(uri);
+    if (pool == null) {
+      pool = readInit(uri);
     }
+    return pool;
+  }
+
+  /**
+   * Metadata read, run on a client of the read NameNodes or of the active one
+   */
+  private interface MetadataRead<T> {
+
+    /**
+     * @param dfs client to read with
+     * @param active false if dfs reads from NameNodes which may lag behind,
+     * a missing path must not be remembered then
+     */
+    T read(DistributedFileSystem dfs, boolean active) throws IOException;
+  }
+
+  /**
+   * Run a metadata read on the read NameNodes, or on the active NameNode if
+   * they can't serve it. A path the read NameNodes don't know is looked up on
+   * the active NameNode, it may just not have reached them yet.
+   *
+   * @param path path to read
+   * @param user FTP user of the session, null if there is none
+   */
+  private static <T> T read(Path path, HdfsUser user, MetadataRead<T> read)
+          throws IOException {
+    HdfsClientPool pool = getReadClientPool(path);
+    HdfsClientPool active = getClientPool(path);
+    if (pool == active) {
+      return read.read(pool.get(user), true);
+    }
+    try {
+      return read.read(pool.get(user), false);
+    } catch (FileNotFoundException e) {
+      return read.read(active.get(user), true);
+    } catch (AccessControlException e) {
+      throw e;
+    } catch (IOException e) {
+      log.warn("Read NameNodes failed to read " + path + ", reading from the active NameNode", e);
+      readNamenodesFailed = System.currentTimeMillis();
+      return read.read(active.get(user), true);
+    }
+  }
+
+  private static boolean isHaUri(String uri) {
+    try {
+      return haNameservice != null && haNameservice.equals(new URI(uri).getHost());
+    } catch (URISyntaxException e) {
+      return false;
+    }
+  }
+
+  private static String getUri(Path path) {
+    if (path == null) {
+      return HDFS_URI;
+    }
+    String uri = mountTable.resolve(path.toUri().getPath());
+    return uri != null ? uri : HDFS_URI;
+  }
+
+  private static void startInotifyTailer(HdfsAdmin admin) {
+    if (inotifyTailer != null) {
+      inotifyTailer.stop();
+    }
+    inotifyTailer = new HdfsInotifyTailer(admin, statusCache);
+    inotifyTailer.start();
   }
 
   public static void setHDFS_URI(String HDFS_URI) {
@@ -39,25 +292,316 @@ public class HdfsOverFtpSystem {
   }
 
   /**
-   * Get dfs
+   * Set the mount table which maps path prefixes to other clusters
+   *
+   * @param mountTable mount table, null to serve all paths from hdfs-uri
+   */
+  public static void setMountTable(HdfsMountTable mountTable) {
+    HdfsOverFtpSystem.mountTable = mountTable != null ? mountTable : new HdfsMountTable();
+  }
+
+  /**
+   * Checks if both paths are served by the same cluster
+   *
+   * @param src first path
+   * @param dst second path
+   * @return true if the paths can be renamed into each other
+   */
+  public static boolean isSameCluster(Path src, Path dst) {
+    return dfsOverride != null || getUri(src).equals(getUri(dst));
+  }
+
+  /**
+   * Get dfs of the default cluster for an operation which doesn't belong to a
+   * session
    *
    * @return dfs
    * @throws IOException
    */
   public static DistributedFileSystem getDfs() throws IOException {
+    return getClientPool(null).next();
+  }
+
+  /**
+   * Set dfs, all paths and sessions use it instead of the client pools
+   *
+   * @param sourceDFS
+   */
+  public static synchronized void setDfs(DistributedFileSystem dfs) throws IOException {
     if (dfs == null) {
-      hdfsInit();
+      dfsOverride = null;
+      for (HdfsClientPool pool : clientPools.values()) {
+        pool.close();
+      }
+      clientPools.clear();
+      for (HdfsClientPool pool : readClientPools.values()) {
+        pool.close();
+      }
+      readClientPools.clear();
+    } else {
+      dfsOverride = new HdfsClientPool(new DistributedFileSystem[]{dfs}, clientPoolPolicy);
     }
-    return dfs;
   }
 
   /**
-   * Set dfs
+   * Set an HA nameservice, hdfs uris with the nameservice as host fail over
+   * between its NameNodes. Takes effect when the DFS connection is initialized.
    *
-   * @param sourceDFS
+   * @param nameservice logical name of the nameservice, null to disable HA
+   * @param namenodes ids of the NameNodes in failover order, mapped to their
+   * RPC addresses
+   */
+  public static synchronized void setHaNameservice(String nameservice,
+          Map<String, String> namenodes) {
+    HdfsOverFtpSystem.haNameservice = nameservice;
+    HdfsOverFtpSystem.haNamenodes = namenodes != null
+            ? new LinkedHashMap<String, String>(namenodes) : null;
+  }
+
+  /**
+   * Send metadata reads (status, listing and permission checks) of the HA
+   * nameservice to the read NameNodes, usually the standby. The NameNodes
+   * have to allow this with dfs.ha.allow.stale.reads. Reads the read
+   * NameNodes fail go to the active NameNode, which serves all reads for a
+   * while after that. Paths changed through this server are read from the
+   * active NameNode while the standby may lag behind.
+   *
+   * @param readNamenodes ids of the NameNodes serving reads, null to read
+   * from the active NameNode
+   * @param lagMillis time in milliseconds the standby may lag behind
+   */
+  public static synchronized void setStandbyReads(List<String> readNamenodes, long lagMillis) {
+    if (readNamenodes != null && !readNamenodes.isEmpty()) {
+      haReadNamenodes = new ArrayList<String>(readNamenodes);
+      standbyReads = new HdfsStandbyReads(lagMillis, 100000);
+    } else {
+      haReadNamenodes = null;
+      standbyReads = null;
+    }
+  }
+
+  /**
+   * Read blocks stored on the local DataNode directly from its disks, handing
+   * file descriptors over the DataNode domain socket. The DataNode needs the
+   * same dfs.domain.socket.path and the native hadoop library. Takes effect
+   * when the DFS connection is initialized.
+   *
+   * @param shortCircuit true to enable short-circuit reads
+   * @param socketPath path of the DataNode domain socket
+   * @param bufferSize read buffer size in bytes, 0 for the HDFS default
+   */
+  public static synchronized void setShortCircuit(boolean shortCircuit, String socketPath,
+          int bufferSize) {
+    HdfsOverFtpSystem.shortCircuit = shortCircuit && socketPath != null;
+    HdfsOverFtpSystem.domainSocketPath = socketPath;
+    HdfsOverFtpSystem.shortCircuitBufferSize = bufferSize;
+  }
+
+  /**
+   * Checks if short-circuit reads are enabled
+   *
+   * @return true if local blocks are read from the DataNode disks
+   */
+  public static boolean isShortCircuit() {
+    return shortCircuit;
+  }
+
+  /**
+   * Read blocks of downloads which have a replica on the local DataNode
+   * straight from its block files. The DataNodes have to list the superuser in
+   * dfs.block.local-path-access.user and the server has to be able to read
+   * the block files. Only used on plain data connections.
+   *
+   * @param localBlockReads true to read local block files
+   */
+  public static void setLocalBlockReads(boolean localBlockReads) {
+    HdfsOverFtpSystem.localBlockReads = localBlockReads;
+  }
+
+  /**
+   * Checks if downloads read local block files
+   *
+   * @return true if local blocks are read from their block files
+   */
+  public static boolean isLocalBlockReads() {
+    return localBlockReads;
+  }
+
+  /**
+   * Enable hedged reads for downloads. Files are then read with positional
+   * reads of chunkSize bytes, and a chunk which takes longer than the
+   * threshold is also requested from another DataNode. Takes effect when the
+   * DFS connection is initialized.
+   *
+   * @param threads size of the thread pool for hedged reads, 0 disables them
+   * @param thresholdMillis time in milliseconds before a read is hedged
+   * @param chunkSize number of bytes read by one positional read
+   * @param chunkPoolSize maximum number of chunks kept for positional reads
+   */
+  public static synchronized void setHedgedReads(int threads, long thresholdMillis,
+          int chunkSize, int chunkPoolSize) {
+    HdfsOverFtpSystem.hedgedReadThreads = threads;
+    HdfsOverFtpSystem.hedgedReadThresholdMillis = thresholdMillis;
+    HdfsOverFtpSystem.hedgedReadChunkSize = chunkSize;
+    HdfsOverFtpSystem.chunkPool = new HdfsBufferPool(chunkSize, chunkPoolSize, false);
+  }
+
+  /**
+   * Checks if downloads use hedged reads
+   *
+   * @return true if files are read with positional reads
    */
-  public static void setDfs(DistributedFileSystem dfs) throws IOException {
-    HdfsOverFtpSystem.dfs = dfs;
+  public static boolean isHedgedReads() {
+    return hedgedReadThreads > 0;
+  }
+
+  /**
+   * Get the number of bytes read by one positional read
+   *
+   * @return chunk size in bytes
+   */
+  public static int getHedgedReadChunkSize() {
+    return hedgedReadChunkSize;
+  }
+
+  /**
+   * Get the pool of the chunks of positional reads
+   *
+   * @return heap buffers of the chunk size
+   */
+  public static HdfsBufferPool getChunkPool() {
+    return chunkPool;
+  }
+
+  /**
+   * Get the counters of the server
+   *
+   * @return counter values by name
+   */
+  public static Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    if (isHedgedReads()) {
+      try {
+        // the hedged read pool and its metrics are shared by all clients
+        DFSHedgedReadMetrics metrics = getDfs().getClient().getHedgedReadMetrics();
+        stats.put("hedged-read-ops", metrics.getHedgedReadOps());
+        stats.put("hedged-read-wins", metrics.getHedgedReadWins());
+        stats.put("hedged-read-ops-in-cur-thread", metrics.getHedgedReadOpsInCurThread());
+      } catch (IOException e) {
+        log.debug("No hedged read metrics", e);
+      }
+    }
+    if (isHedgedReads() || openFileCache != null) {
+      HdfsBufferPool pool = chunkPool;
+      stats.put("chunk-pool-capacity", (long) pool.getCapacity());
+      stats.put("chunk-pool-allocated", (long) pool.getAllocated());
+      stats.put("chunk-pool-in-use", (long) pool.getInUse());
+      stats.put("chunk-pool-misses", pool.getMisses());
+    }
+    if (readAhead != null) {
+      HdfsBufferPool pool = readAhead.getPool();
+      stats.put("buffer-pool-capacity", (long) pool.getCapacity());
+      stats.put("buffer-pool-allocated", (long) pool.getAllocated());
+      stats.put("buffer-pool-in-use", (long) pool.getInUse());
+      stats.put("buffer-pool-misses", pool.getMisses());
+    }
+    if (openFileCache != null) {
+      stats.put("open-file-cache-open", (long) openFileCache.size());
+      stats.put("open-file-cache-opens", openFileCache.getOpens());
+      stats.put("open-file-cache-hits", openFileCache.getHits());
+    }
+    if (segmentedUploads != null) {
+      stats.put("segmented-uploads", segmentedUploads.size());
+    }
+    if (uploadSpool != null) {
+      stats.put("spool-uploads", (long) uploadSpool.size());
+      stats.put("spool-used-bytes", uploadSpool.getUsedBytes());
+    }
+    HdfsReplicationQueue queue = replicationQueue;
+    if (queue != null) {
+      stats.put("replication-backlog", (long) queue.getBacklog());
+      stats.put("replication-done", queue.getDone());
+      stats.put("replication-failed", queue.getFailed());
+      stats.put("replication-journal-errors", queue.getJournalErrors());
+      stats.put("replication-stalled", queue.isStalled() ? 1L : 0L);
+    }
+    return stats;
+  }
+
+  /**
+   * Set the number of DFS clients per cluster and how sessions are spread over
+   * them. Takes effect when the DFS connection is initialized.
+   *
+   * @param size number of clients, each with its own NameNode connection
+   * @param policy how a client is picked for an operation
+   */
+  public static synchronized void setClientPool(int size, HdfsClientPool.Policy policy) {
+    HdfsOverFtpSystem.clientPoolSize = size;
+    HdfsOverFtpSystem.clientPoolPolicy = policy;
+  }
+
+  /**
+   * Act on behalf of the FTP users through Hadoop proxy users when writing and
+   * reading files, so the NameNode checks permissions and sets the owner. The
+   * login user of the server, not the configured superuser, impersonates the
+   * FTP users and has to be allowed to in the hadoop.proxyuser settings of the
+   * NameNode.
+   *
+   * @param proxyUser true to use proxy users
+   * @param idleMillis time in milliseconds after which an unused proxy user
+   * filesystem is closed
+   */
+  public static synchronized void setProxyUser(boolean proxyUser, long idleMillis) {
+    HdfsOverFtpSystem.proxyUser = proxyUser;
+    HdfsOverFtpSystem.proxyUserIdleMillis = idleMillis;
+    for (HdfsProxyFileSystems fileSystems : proxyFileSystems.values()) {
+      fileSystems.closeAll();
+    }
+    proxyFileSystems.clear();
+  }
+
+  /**
+   * Checks if files are accessed through proxy users
+   *
+   * @return true if the NameNode checks the permissions of the FTP users
+   */
+  public static boolean isProxyUser() {
+    return proxyUser;
+  }
+
+  private static synchronized HdfsProxyFileSystems getProxyFileSystems(Path path)
+          throws IOException {
+    String uri = getUri(path);
+    HdfsProxyFileSystems fileSystems = proxyFileSystems.get(uri);
+    if (fileSystems == null) {
+      try {
+        fileSystems = new HdfsProxyFileSystems(new URI(uri), createConf(), proxyUserIdleMillis);
+      } catch (URISyntaxException e) {
+        throw new IOException("Invalid hdfs uri " + uri, e);
+      }
+      proxyFileSystems.put(uri, fileSystems);
+    }
+    return fileSystems;
+  }
+
+  /**
+   * Get dfs to change or stream the path on behalf of the user. The dfs stays
+   * open until the lease is released.
+   *
+   * @param path path to change or stream
+   * @param user FTP user
+   * @return lease on the dfs of the cluster serving the path, acting as the
+   * user if proxy users are enabled, otherwise as the superuser
+   * @throws IOException
+   */
+  public static HdfsProxyFileSystems.Lease leaseDfs(Path path, HdfsUser user) throws IOException {
+    if (proxyUser) {
+      return getProxyFileSystems(path).lease(user.getName());
+    }
+    HdfsProxyFileSystems.Lease lease = new HdfsProxyFileSystems.Lease(superuser,
+            getClientPool(path).get(user));
+    lease.acquire();
+    return lease;
   }
 
   /**
@@ -69,6 +613,406 @@ public class HdfsOverFtpSystem {
     HdfsOverFtpSystem.superuser = superuser;
   }
 
+  /**
+   * Enable the server-wide status cache
+   *
+   * @param maxEntries maximum number of cached entries, 0 disables the cache
+   * @param ttlMillis time in milliseconds a cached entry stays valid
+   * @param missingTtlMillis time in milliseconds a missing path is remembered,
+   * 0 to not remember missing paths
+   */
+  public static void setStatusCache(long maxEntries, long ttlMillis, long missingTtlMillis) {
+    if (maxEntries > 0 && ttlMillis > 0) {
+      statusCache = new HdfsFileStatusCache(maxEntries, ttlMillis, missingTtlMillis);
+    } else {
+      statusCache = null;
+    }
+  }
+
+  /**
+   * Evict entries of the status cache from the HDFS inotify stream, so
+   * changes made by other HDFS clients are seen before entries expire. The
+   * stream is followed once the DFS connection is initialized.
+   *
+   * @param inotify true to follow the inotify stream
+   */
+  public static void setStatusCacheInotify(boolean inotify) {
+    HdfsOverFtpSystem.statusCacheInotify = inotify;
+  }
+
+  /**
+   * Enable listing of the new working directory ahead of time after CWD
+   *
+   * @param threads number of listings fetched at the same time, 0 disables it
+   * @param queueSize number of listings waiting for a thread
+   */
+  public static void setListingPrefetcher(int threads, int queueSize) {
+    if (listingPrefetcher != null) {
+      listingPrefetcher.shutdown();
+    }
+    if (threads > 0) {
+      listingPrefetcher = new HdfsListingPrefetcher(threads, queueSize);
+    } else {
+      listingPrefetcher = null;
+    }
+  }
+
+  /**
+   * Get the listing prefetcher
+   *
+   * @return the listing prefetcher or null if it is disabled
+   */
+  public static HdfsListingPrefetcher getListingPrefetcher() {
+    return listingPrefetcher;
+  }
+
+  /**
+   * Enable reading downloads ahead in a background thread
+   *
+   * @param threads number of downloads read ahead at the same time, 0
+   * disables it
+   * @param buffers number of buffers read ahead per download
+   * @param bufferSize size of a buffer in bytes
+   * @param poolSize number of direct buffers shared by all downloads, more are
+   * allocated on the heap
+   */
+  public static void setReadAhead(int threads, int buffers, int bufferSize, int poolSize) {
+    if (readAhead != null) {
+      readAhead.shutdown();
+    }
+    if (threads > 0 && buffers > 0) {
+      readAhead = new HdfsReadAhead(threads, buffers, new HdfsBufferPool(bufferSize, poolSize));
+    } else {
+      readAhead = null;
+    }
+  }
+
+  /**
+   * Get the read-ahead of downloads
+   *
+   * @return the read-ahead or null if it is disabled
+   */
+  public static HdfsReadAhead getReadAhead() {
+    return readAhead;
+  }
+
+  /**
+   * Enable sharing open files between concurrent downloads of the same file.
+   * The downloads then read with positional reads of the hedged read chunk
+   * size.
+   *
+   * @param enabled true to share open files
+   */
+  public static void setOpenFileCache(boolean enabled) {
+    openFileCache = enabled ? new HdfsOpenFileCache() : null;
+  }
+
+  /**
+   * Get the open files shared by downloads
+   *
+   * @return the open file cache or null if it is disabled
+   */
+  public static HdfsOpenFileCache getOpenFileCache() {
+    return openFileCache;
+  }
+
+  /**
+   * Enable uploads in parts over several connections, declared with SITE
+   * SEGMENTS
+   *
+   * @param enabled true to accept uploads in parts
+   * @param timeoutMillis time in milliseconds after which an upload without
+   * activity is dropped together with its parts
+   * @param maxParts maximum number of parts of an upload
+   */
+  public static void setSegmentedUploads(boolean enabled, long timeoutMillis, int maxParts) {
+    segmentedUploads = enabled ? new HdfsSegmentedUploads(timeoutMillis, maxParts) : null;
+  }
+
+  /**
+   * Get the uploads in parts
+   *
+   * @return the uploads or null if uploads in parts are disabled
+   */
+  public static HdfsSegmentedUploads getSegmentedUploads() {
+    return segmentedUploads;
+  }
+
+  /**
+   * Enable the write-behind spool of uploads. Uploads left in the spool
+   * directory are committed to HDFS.
+   *
+   * @param dir local spool directory, null disables the spool
+   * @param maxBytes disk budget of the spool in bytes
+   * @param committers number of uploads copied into HDFS at the same time
+   * @param waitMillis time in milliseconds a write waits for space in the
+   * spool
+   * @throws IOException if the spool directory can't be used
+   */
+  public static void setUploadSpool(File dir, long maxBytes, int committers, long waitMillis)
+          throws IOException {
+    if (uploadSpool != null) {
+      uploadSpool.shutdown();
+    }
+    uploadSpool = dir == null ? null : new HdfsUploadSpool(dir, maxBytes, committers, waitMillis);
+  }
+
+  /**
+   * Set the rules choosing how uploaded files are created
+   *
+   * @param uploadPolicy upload policy, an empty one keeps the cluster defaults
+   */
+  public static void setUploadPolicy(HdfsUploadPolicy uploadPolicy) {
+    HdfsOverFtpSystem.uploadPolicy = uploadPolicy;
+  }
+
+  /**
+   * Get the rules choosing how uploaded files are created
+   *
+   * @return upload policy
+   */
+  public static HdfsUploadPolicy getUploadPolicy() {
+    return uploadPolicy;
+  }
+
+  /**
+   * Write uploads with a low replication and raise it in the background.
+   * Files left in the journal are queued again.
+   *
+   * @param journal local journal file of the queue, null disables it
+   * @param landingReplication replication uploads are written with
+   * @param rate maximum number of files raised per second, 0 for no limit
+   * @throws IOException if the journal can't be used
+   */
+  public static void setReplicationQueue(File journal, short landingReplication, int rate)
+          throws IOException {
+    if (replicationQueue != null) {
+      replicationQueue.shutdown();
+    }
+    replicationQueue = journal == null ? null
+            : new HdfsReplicationQueue(journal, landingReplication, rate);
+  }
+
+  /**
+   * Get the queue raising the replication of uploads
+   *
+   * @return the queue or null if uploads get their target replication
+   * directly
+   */
+  public static HdfsReplicationQueue getReplicationQueue() {
+    return replicationQueue;
+  }
+
+  /**
+   * Get the write-behind spool of uploads
+   *
+   * @return the spool or null if it is disabled
+   */
+  public static HdfsUploadSpool getUploadSpool() {
+    return uploadSpool;
+  }
+
+  /**
+   * Set how long an append waits for the recovery of a file left open by a
+   * writer which is gone
+   *
+   * @param timeoutMillis time in milliseconds
+   */
+  public static void setLeaseRecoveryTimeout(long timeoutMillis) {
+    HdfsOverFtpSystem.leaseRecoveryTimeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Get how long an append waits for the recovery of a file
+   *
+   * @return time in milliseconds
+   */
+  public static long getLeaseRecoveryTimeout() {
+    return leaseRecoveryTimeoutMillis;
+  }
+
+  /**
+   * Tell that the file is being written through this server
+   *
+   * @param path file opened for writing
+   */
+  static void startWriting(Path path) {
+    writing.add(HdfsFileStatusCache.key(path).toString());
+  }
+
+  /**
+   * Tell that a writer of the file through this server is done
+   *
+   * @param path file closed
+   */
+  static void endWriting(Path path) {
+    writing.remove(HdfsFileStatusCache.key(path).toString());
+  }
+
+  /**
+   * Checks if the file is being written through this server
+   *
+   * @param path file to check
+   * @return true if a writer has it open
+   */
+  static boolean isWriting(Path path) {
+    return writing.contains(HdfsFileStatusCache.key(path).toString());
+  }
+
+  /**
+   * Get status of the path, through the status cache if it is enabled
+   *
+   * @param path path to get status of
+   * @return status of the path
+   * @throws IOException if the path doesn't exist
+   */
+  public static FileStatus getFileStatus(final Path path) throws IOException {
+    return read(path, null, new MetadataRead<FileStatus>() {
+      public FileStatus read(DistributedFileSystem dfs, boolean active)
+              throws IOException {
+        if (statusCache == null) {
+          return dfs.getFileStatus(path);
+        }
+        FileStatus status = statusCache.findFileStatus(dfs, path, active);
+        if (status == null) {
+          throw new FileNotFoundException("File does not exist: " + path);
+        }
+        return status;
+      }
+    });
+  }
+
+  /**
+   * Get status of the path, through the status cache if it is enabled. Missing
+   * paths remembered by the cache are answered without an exception.
+   *
+   * @param path path to get status of
+   * @param user FTP user of the session, null if there is none
+   * @return status of the path or null if the path doesn't exist
+   * @throws IOException if the status can't be fetched
+   */
+  public static FileStatus findFileStatus(final Path path, HdfsUser user) throws IOException {
+    try {
+      return read(path, user, new MetadataRead<FileStatus>() {
+        public FileStatus read(DistributedFileSystem dfs, boolean active)
+                throws IOException {
+          if (statusCache == null) {
+            return dfs.getFileStatus(path);
+          }
+          FileStatus status = statusCache.findFileStatus(dfs, path, active);
+          if (status == null && !active) {
+            // not remembered as missing, asked again on the active NameNode
+            throw new FileNotFoundException("File does not exist: " + path);
+          }
+          return status;
+        }
+      });
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * List the directory, through the status cache if it is enabled
+   *
+   * @param path directory to list
+   * @param user FTP user of the session, null if there is none
+   * @return statuses of the children
+   * @throws IOException if the directory can't be listed
+   */
+  public static FileStatus[] listStatus(final Path path, HdfsUser user) throws IOException {
+    return read(path, user, new MetadataRead<FileStatus[]>() {
+      public FileStatus[] read(DistributedFileSystem dfs, boolean active)
+              throws IOException {
+        if (statusCache == null) {
+          return dfs.listStatus(path);
+        }
+        return statusCache.listStatus(dfs, path);
+      }
+    });
+  }
+
+  /**
+   * List the directory one batch at a time. A cached listing is used if there
+   * is one, otherwise the directory is paged through from HDFS.
+   *
+   * @param path directory to list
+   * @param user FTP user of the session, null if there is none
+   * @return iterator over statuses of the children
+   * @throws IOException if the directory can't be listed
+   */
+  public static RemoteIterator<FileStatus> listStatusIterator(final Path path, HdfsUser user)
+          throws IOException {
+    if (statusCache != null) {
+      FileStatus[] cached = statusCache.getListing(path);
+      if (cached != null) {
+        return HdfsDirectoryIterator.of(cached);
+      }
+    }
+    // the first batch is fetched here, later ones from the same NameNode
+    return read(path, user, new MetadataRead<RemoteIterator<FileStatus>>() {
+      public RemoteIterator<FileStatus> read(DistributedFileSystem dfs, boolean active)
+              throws IOException {
+        return new HdfsDirectoryIterator(dfs, path, statusCache);
+      }
+    });
+  }
+
+  /**
+   * Expand a glob pattern on HDFS
+   *
+   * @param pattern glob pattern
+   * @param filter filter for the matched paths
+   * @param user FTP user of the session, null if there is none
+   * @return statuses of the matching paths, null if the pattern has no glob
+   * and the path doesn't exist
+   * @throws IOException if the pattern can't be expanded
+   */
+  public static FileStatus[] globStatus(final Path pattern, final PathFilter filter,
+          HdfsUser user) throws IOException {
+    return read(pattern, user, new MetadataRead<FileStatus[]>() {
+      public FileStatus[] read(DistributedFileSystem dfs, boolean active)
+              throws IOException {
+        return dfs.globStatus(pattern, filter);
+      }
+    });
+  }
+
+  /**
+   * Tell the status cache that the path and its parent have been changed
+   *
+   * @param path changed path
+   */
+  public static void invalidate(Path path) {
+    if (statusCache != null) {
+      statusCache.invalidate(path);
+    }
+    if (standbyReads != null) {
+      standbyReads.changed(path);
+    }
+    if (openFileCache != null) {
+      openFileCache.invalidate(path);
+    }
+  }
+
+  /**
+   * Tell the status cache that the path, everything below it and its parent
+   * have been changed
+   *
+   * @param path changed path
+   */
+  public static void invalidateTree(Path path) {
+    if (statusCache != null) {
+      statusCache.invalidateTree(path);
+    }
+    if (standbyReads != null) {
+      standbyReads.changedTree(path);
+    }
+    if (openFileCache != null) {
+      openFileCache.invalidateTree(path);
+    }
+  }
+
 //  public static String dirList(String path) throws IOException {
 //    String res = "";
 //
@@ -0,0 +1,259 @@
+package com.spright.hof;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream which reads a file with positional reads of a whole chunk at a
+ * time. Unlike sequential reads, positional reads can be hedged: if a
+ * DataNode is slower than the hedged read threshold, the chunk is also
+ * requested from another replica and the first answer wins. Positional reads
+ * also let several transfers share one open stream. Reads of at least a chunk
+ * into an array go straight to it, smaller reads are served from a chunk
+ * borrowed from a pool of heap buffers. The stream may be closed by another
+ * thread than the one reading it, a chunk still being read into is then
+ * dropped from the pool rather than handed to another stream.
+ */
+public class HdfsPositionalInputStream extends InputStream implements ByteBufferReadable {
+
+  private final FSDataInputStream in;
+  private final Closeable closer;
+  private final HdfsBufferPool pool;
+  private final int chunkSize;
+  private byte[] chunk = null;
+  private ByteBuffer borrowed = null;
+  private long position;
+  private int chunkLength = 0;
+  private int chunkPos = 0;
+  // guards closed, reading and the borrowed chunk
+  private final Object lock = new Object();
+  private volatile boolean closed = false;
+  private boolean reading = false;
+
+  /**
+   * Constructs HdfsPositionalInputStream
+   *
+   * @param in stream to read from
+   * @param position offset to start reading at
+   * @param chunkSize number of bytes read by one positional read
+   */
+  public HdfsPositionalInputStream(FSDataInputStream in, long position, int chunkSize) {
+    this(in, position, chunkSize, in);
+  }
+
+  /**
+   * Constructs HdfsPositionalInputStream on a shared stream
+   *
+   * @param in stream to read from
+   * @param position offset to start reading at
+   * @param chunkSize number of bytes read by one positional read
+   * @param closer closed instead of the stream when this one is closed
+   */
+  public HdfsPositionalInputStream(FSDataInputStream in, long position, int chunkSize,
+          Closeable closer) {
+    this(in, position, chunkSize, null, closer);
+  }
+
+  /**
+   * Constructs HdfsPositionalInputStream which borrows its chunk from a pool
+   *
+   * @param in stream to read from
+   * @param position offset to start reading at
+   * @param pool heap buffers of the chunk size
+   * @param closer closed instead of the stream when this one is closed
+   */
+  public HdfsPositionalInputStream(FSDataInputStream in, long position, HdfsBufferPool pool,
+          Closeable closer) {
+    this(in, position, pool.getBufferSize(), pool, closer);
+  }
+
+  private HdfsPositionalInputStream(FSDataInputStream in, long position, int chunkSize,
+          HdfsBufferPool pool, Closeable closer) {
+    this.in = in;
+    this.closer = closer;
+    this.position = position;
+    this.chunkSize = chunkSize;
+    this.pool = pool;
+  }
+
+  /**
+   * Read the next chunk if the current one is used up
+   *
+   * @return false at the end of the file
+   */
+  private boolean fill() throws IOException {
+    if (chunkPos < chunkLength) {
+      return true;
+    }
+    synchronized (lock) {
+      checkOpen();
+      if (chunk == null) {
+        if (pool != null) {
+          borrowed = pool.acquire();
+          chunk = borrowed.array();
+        } else {
+          chunk = new byte[chunkSize];
+        }
+      }
+    }
+    int n = in.read(position, chunk, 0, chunkSize);
+    if (n <= 0) {
+      return false;
+    }
+    position += n;
+    chunkLength = n;
+    chunkPos = 0;
+    return true;
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream is closed");
+    }
+  }
+
+  /**
+   * Start a read, the chunk stays borrowed until it ends
+   */
+  private void begin() throws IOException {
+    synchronized (lock) {
+      checkOpen();
+      reading = true;
+    }
+  }
+
+  private void end() {
+    synchronized (lock) {
+      reading = false;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    begin();
+    try {
+      if (!fill()) {
+        return -1;
+      }
+      return chunk[chunkPos++] & 0xff;
+    } finally {
+      end();
+    }
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    begin();
+    try {
+      return readArray(b, off, len);
+    } finally {
+      end();
+    }
+  }
+
+  private int readArray(byte[] b, int off, int len) throws IOException {
+    if (chunkPos >= chunkLength && len >= chunkSize) {
+      int n = in.read(position, b, off, chunkSize);
+      if (n <= 0) {
+        return -1;
+      }
+      position += n;
+      return n;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, chunkLength - chunkPos);
+    System.arraycopy(chunk, chunkPos, b, off, n);
+    chunkPos += n;
+    return n;
+  }
+
+  public int read(ByteBuffer buf) throws IOException {
+    if (!buf.hasRemaining()) {
+      return 0;
+    }
+    begin();
+    try {
+      if (buf.hasArray() && chunkPos >= chunkLength && buf.remaining() >= chunkSize) {
+        int n = readArray(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        if (n > 0) {
+          buf.position(buf.position() + n);
+        }
+        return n;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int n = Math.min(buf.remaining(), chunkLength - chunkPos);
+      buf.put(chunk, chunkPos, n);
+      chunkPos += n;
+      return n;
+    } finally {
+      end();
+    }
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    long buffered = chunkLength - chunkPos;
+    if (n <= buffered) {
+      chunkPos += n;
+      return n;
+    }
+    chunkPos = chunkLength;
+    // nothing can be skipped past the end of the file
+    long skipped = Math.min(n - buffered, Math.max(0, getLength() - position));
+    position += skipped;
+    return buffered + skipped;
+  }
+
+  /**
+   * Get the length of the file
+   *
+   * @return visible length of an HDFS file, unbounded for other streams
+   */
+  private long getLength() throws IOException {
+    if (in instanceof HdfsDataInputStream) {
+      return ((HdfsDataInputStream) in).getVisibleLength();
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return closed ? 0 : chunkLength - chunkPos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (borrowed != null) {
+        if (reading) {
+          // a read in another thread still fills the chunk
+          pool.discard(borrowed);
+        } else {
+          pool.release(borrowed);
+        }
+        borrowed = null;
+      }
+    }
+    closer.close();
+  }
+}
@@ -0,0 +1,172 @@
+package com.spright.hof;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of DistributedFileSystem instances which act on behalf of FTP users
+ * through Hadoop proxy users, so the NameNode checks permissions and sets the
+ * owner itself. Every use of an instance holds a lease on it, instances not
+ * used for a while are closed once their last lease is released.
+ */
+public class HdfsProxyFileSystems {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsProxyFileSystems.class);
+
+  private final URI uri;
+  private final Configuration conf;
+  private final LoadingCache<String, Lease> cache;
+
+  /**
+   * Constructs HdfsProxyFileSystems
+   *
+   * @param uri HDFS uri
+   * @param conf configuration for the filesystems
+   * @param idleMillis time in milliseconds after which an unused filesystem is
+   * closed
+   */
+  public HdfsProxyFileSystems(URI uri, Configuration conf, long idleMillis) {
+    this.uri = uri;
+    this.conf = conf;
+    this.cache = CacheBuilder.newBuilder()
+            .expireAfterAccess(idleMillis, TimeUnit.MILLISECONDS)
+            .removalListener(new RemovalListener<String, Lease>() {
+              public void onRemoval(RemovalNotification<String, Lease> notification) {
+                notification.getValue().evict();
+              }
+            })
+            .build(new CacheLoader<String, Lease>() {
+              public Lease load(String user) throws IOException, InterruptedException {
+                return new Lease(user, create(user));
+              }
+            });
+  }
+
+  private DistributedFileSystem create(String user) throws IOException, InterruptedException {
+    log.debug("Creating filesystem for proxy user " + user);
+    UserGroupInformation ugi = UserGroupInformation.createProxyUser(user,
+            UserGroupInformation.getLoginUser());
+    return ugi.doAs(new PrivilegedExceptionAction<DistributedFileSystem>() {
+      public DistributedFileSystem run() throws IOException {
+        DistributedFileSystem dfs = new DistributedFileSystem();
+        dfs.initialize(uri, conf);
+        return dfs;
+      }
+    });
+  }
+
+  /**
+   * Get the filesystem acting as the user for an operation or a stream. The
+   * filesystem stays open until the lease is released.
+   *
+   * @param user FTP user name
+   * @return lease on the filesystem acting as the user
+   * @throws IOException if the filesystem can't be created
+   */
+  public Lease lease(String user) throws IOException {
+    while (true) {
+      Lease lease = load(user);
+      if (lease.acquire()) {
+        return lease;
+      }
+      // evicted since it was loaded, its filesystem is closed or closing
+      cache.asMap().remove(user, lease);
+    }
+  }
+
+  private Lease load(String user) throws IOException {
+    try {
+      return cache.get(user);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Can't create filesystem for " + user, e.getCause());
+    }
+  }
+
+  /**
+   * Close all filesystems once their streams are done
+   */
+  public void closeAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * A filesystem held open by its streams
+   */
+  public static class Lease {
+
+    private final String user;
+    private final DistributedFileSystem dfs;
+    private int holders = 0;
+    private boolean evicted = false;
+
+    /**
+     * Constructs Lease
+     *
+     * @param user user the filesystem acts as
+     * @param dfs filesystem to hold open
+     */
+    public Lease(String user, DistributedFileSystem dfs) {
+      this.user = user;
+      this.dfs = dfs;
+    }
+
+    public DistributedFileSystem getDfs() {
+      return dfs;
+    }
+
+    /**
+     * Hold the filesystem open
+     *
+     * @return false if the lease has been evicted and can't be held anymore
+     */
+    synchronized boolean acquire() {
+      if (evicted) {
+        return false;
+      }
+      holders++;
+      return true;
+    }
+
+    /**
+     * Release the lease, the filesystem is closed if it has been evicted and
+     * this was the last holder
+     */
+    public synchronized void release() {
+      holders--;
+      closeIfUnused();
+    }
+
+    synchronized void evict() {
+      evicted = true;
+      closeIfUnused();
+    }
+
+    private void closeIfUnused() {
+      if (evicted && holders <= 0) {
+        log.debug("Closing filesystem for proxy user " + user);
+        try {
+          dfs.close();
+        } catch (IOException e) {
+          log.warn("Error closing filesystem for " + user, e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.spright.hof;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the read-ahead of downloads. Every download being read ahead holds a
+ * thread, downloads started while all threads are busy are read directly.
+ */
+public class HdfsReadAhead {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsReadAhead.class);
+
+  private final ThreadPoolExecutor executor;
+  private final HdfsBufferPool pool;
+  private final int buffers;
+
+  /**
+   * Constructs HdfsReadAhead
+   *
+   * @param threads number of downloads read ahead at the same time
+   * @param buffers number of buffers read ahead per download
+   * @param pool pool of the buffers shared by all downloads
+   */
+  public HdfsReadAhead(int threads, int buffers, HdfsBufferPool pool) {
+    this.executor = new ThreadPoolExecutor(0, threads, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hof-readahead-%d").build());
+    this.buffers = buffers;
+    this.pool = pool;
+  }
+
+  /**
+   * Start reading the stream ahead
+   *
+   * @param in stream of the download
+   * @return stream reading ahead, or the stream itself if all threads are busy
+   */
+  public InputStream wrap(InputStream in) {
+    try {
+      return new HdfsReadAheadInputStream(in, executor, pool, buffers);
+    } catch (RejectedExecutionException e) {
+      log.debug("Read-ahead is busy, reading directly");
+      return in;
+    }
+  }
+
+  /**
+   * Get the pool of the buffers
+   *
+   * @return buffer pool
+   */
+  public HdfsBufferPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Stop the read-ahead threads
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,292 @@
+package com.spright.hof;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Input stream which reads ahead of its reader. A producer task fills a ring
+ * of large buffers from the source while the reader drains filled buffers, so
+ * HDFS reads and socket writes of a transfer overlap instead of alternating.
+ * The buffers are borrowed from a shared pool for the life of the stream and
+ * are filled with ByteBuffer reads where the source supports them. The
+ * producer is stopped without interrupting it, as an interrupted DFS read
+ * marks its DataNode dead for every user of a shared stream.
+ */
+public class HdfsReadAheadInputStream extends InputStream {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsReadAheadInputStream.class);
+
+  private final static long CLOSE_TIMEOUT_MILLIS = 10000;
+
+  /**
+   * Buffer of the ring, or the end of the stream if buffer is null
+   */
+  private static class Chunk {
+
+    final ByteBuffer buffer;
+    IOException error;
+
+    Chunk(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+  }
+
+  private final InputStream source;
+  private final HdfsBufferPool pool;
+  private final List<Chunk> chunks;
+  private final BlockingQueue<Chunk> free;
+  private final BlockingQueue<Chunk> filled;
+  private final AtomicBoolean started = new AtomicBoolean();
+  // wakes the producer waiting for a free buffer when the stream is closed
+  private final Chunk stop = new Chunk(null);
+  private volatile boolean stopping = false;
+  private final CountDownLatch produced = new CountDownLatch(1);
+  private final Future<?> producer;
+
+  private Chunk current = null;
+  private boolean eof = false;
+  private boolean closed = false;
+
+  /**
+   * Constructs HdfsReadAheadInputStream and starts reading ahead
+   *
+   * @param source stream to read from
+   * @param executor runs the producer task
+   * @param pool pool to borrow the buffers from
+   * @param buffers number of buffers in the ring
+   * @throws RejectedExecutionException if the executor can't take the
+   * producer task
+   */
+  public HdfsReadAheadInputStream(InputStream source, ExecutorService executor,
+          HdfsBufferPool pool, int buffers) {
+    this.source = source;
+    this.pool = pool;
+    this.chunks = new ArrayList<Chunk>(buffers);
+    // one more slot to stop the producer
+    this.free = new ArrayBlockingQueue<Chunk>(buffers + 1);
+    // one more slot for the end of the stream
+    this.filled = new ArrayBlockingQueue<Chunk>(buffers + 1);
+    for (int i = 0; i < buffers; i++) {
+      Chunk chunk = new Chunk(pool.acquire());
+      chunks.add(chunk);
+      free.add(chunk);
+    }
+    try {
+      this.producer = executor.submit(new Runnable() {
+        public void run() {
+          if (!started.compareAndSet(false, true)) {
+            // closed before it got a thread
+            return;
+          }
+          try {
+            produce();
+          } finally {
+            produced.countDown();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      releaseBuffers(true);
+      throw e;
+    }
+  }
+
+  private void produce() {
+    Chunk end = new Chunk(null);
+    try {
+      while (true) {
+        Chunk chunk = free.take();
+        if (stopping) {
+          return;
+        }
+        boolean full = readFully(chunk.buffer);
+        if (stopping) {
+          return;
+        }
+        if (!chunk.buffer.hasRemaining()) {
+          break;
+        }
+        filled.put(chunk);
+        if (!full) {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      // the read-ahead is shut down
+      return;
+    } catch (IOException e) {
+      if (stopping) {
+        return;
+      }
+      end.error = e;
+    }
+    // room is left for the end of the stream
+    filled.offer(end);
+  }
+
+  /**
+   * Read until the buffer is full or the source ends. The buffer is flipped
+   * for reading afterwards.
+   *
+   * @return false if the source has ended
+   */
+  private boolean readFully(ByteBuffer buffer) throws IOException {
+    buffer.clear();
+    boolean more = true;
+    while (buffer.hasRemaining() && !stopping) {
+      int n;
+      if (source instanceof ByteBufferReadable) {
+        n = ((ByteBufferReadable) source).read(buffer);
+      } else if (buffer.hasArray()) {
+        n = source.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (n > 0) {
+          buffer.position(buffer.position() + n);
+        }
+      } else {
+        byte[] bytes = new byte[buffer.remaining()];
+        n = source.read(bytes);
+        if (n > 0) {
+          buffer.put(bytes, 0, n);
+        }
+      }
+      if (n < 0) {
+        more = false;
+        break;
+      }
+    }
+    buffer.flip();
+    return more;
+  }
+
+  /**
+   * Take the next filled buffer if the current one is used up
+   *
+   * @return false at the end of the stream
+   */
+  private boolean fill() throws IOException {
+    // the buffers are back in the pool once the stream is closed
+    if (closed) {
+      throw new IOException("Stream is closed");
+    }
+    if (current != null && current.buffer.hasRemaining()) {
+      return true;
+    }
+    if (current != null) {
+      free.add(current);
+      current = null;
+    }
+    if (eof) {
+      return false;
+    }
+    Chunk chunk;
+    try {
+      chunk = filled.take();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted waiting for read-ahead");
+    }
+    if (chunk.buffer == null) {
+      eof = true;
+      if (chunk.error != null) {
+        throw chunk.error;
+      }
+      return false;
+    }
+    current = chunk;
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return current.buffer.get() & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, current.buffer.remaining());
+    current.buffer.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return current != null && !closed ? current.buffer.remaining() : 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    stopping = true;
+    free.offer(stop);
+    producer.cancel(false);
+    log.debug("Closing read-ahead stream");
+    // the source is closed only once the producer is out of it
+    boolean stopped = awaitProducer();
+    try {
+      source.close();
+    } finally {
+      releaseBuffers(stopped);
+    }
+  }
+
+  /**
+   * Wait for the producer to stop
+   *
+   * @return false if it is still running
+   */
+  private boolean awaitProducer() {
+    try {
+      return started.compareAndSet(false, true)
+              || produced.await(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Give the buffers back to the pool, or forget them if the producer may
+   * still fill them
+   *
+   * @param stopped true if the producer no longer fills the buffers
+   */
+  private void releaseBuffers(boolean stopped) {
+    for (Chunk chunk : chunks) {
+      if (stopped) {
+        pool.release(chunk.buffer);
+      } else {
+        pool.discard(chunk.buffer);
+      }
+    }
+    if (!stopped) {
+      log.warn("Read-ahead did not stop, discarding its buffers");
+    }
+  }
+}
@@ -0,0 +1,521 @@
+package com.spright.hof;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.security.AccessControlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Raises the replication of uploaded files in the background. Uploads are
+ * written with the landing replication, so the client waits on a short
+ * write pipeline, and the file is queued to get its target replication
+ * once it is closed. Until then a lost DataNode can lose the file.
+ * The queue is kept in a local journal, one line per queued file and per
+ * finished one, so it survives a restart of the server. The journal is
+ * rewritten with the pending files only once it holds a few times more lines
+ * than there are pending files, so it stays small under a steady backlog.
+ * Files are handled oldest first at a limited rate, to keep re-replication
+ * from flooding the cluster. Files the user isn't allowed to change are
+ * dropped. Files renamed through {@link #rename} keep their place in the
+ * queue under the new name.
+ * If the journal can't be written the queue goes on in memory and tries to
+ * rewrite the journal after every file, and uploads get their target
+ * replication directly until it succeeds. Uploads also get it directly if the
+ * worker thread is gone.
+ */
+public class HdfsReplicationQueue {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsReplicationQueue.class);
+
+  private final static Charset UTF8 = Charset.forName("UTF-8");
+  private final static long RETRY_MILLIS = 1000;
+  // the journal is compacted once it has more lines than this many per
+  // pending file, plus the minimum
+  private final static int COMPACT_RATIO = 2;
+  private final static int COMPACT_MIN_LINES = 1000;
+
+  private final File journal;
+  private final short landingReplication;
+  private final long pauseMillis;
+  private final Thread worker;
+  private volatile boolean stopped = false;
+  private final AtomicLong done = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong journalErrors = new AtomicLong();
+  // held by renames, taken exclusively before a file is dropped as gone so
+  // a file renamed meanwhile is found under its new name
+  private final ReadWriteLock renames = new ReentrantReadWriteLock();
+
+  // guarded by this, files in the order they were queued
+  private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<String, Entry>();
+  private Writer writer;
+  private long journalLines = 0;
+  private volatile boolean broken = false;
+
+  /**
+   * Constructs HdfsReplicationQueue and resumes the files left in the
+   * journal
+   *
+   * @param journal local journal file of the queue
+   * @param landingReplication replication uploads are written with
+   * @param rate maximum number of files handled per second, 0 for no limit
+   * @throws IOException if the journal can't be read or written
+   */
+  public HdfsReplicationQueue(File journal, short landingReplication, int rate)
+          throws IOException {
+    this.journal = journal;
+    this.landingReplication = landingReplication;
+    this.pauseMillis = rate > 0 ? 1000 / rate : 0;
+    load();
+    synchronized (this) {
+      compact();
+      if (broken) {
+        throw new IOException("Can't write the journal " + journal);
+      }
+    }
+    if (!pending.isEmpty()) {
+      log.info("Resuming the replication of " + pending.size() + " files");
+    }
+    this.worker = new Thread(new Runnable() {
+      public void run() {
+        work();
+      }
+    }, "hof-replication");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Replay the journal: "+" lines queue a file, "-" lines finish it
+   */
+  private void load() throws IOException {
+    if (!journal.exists()) {
+      return;
+    }
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(journal), UTF8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", 5);
+        try {
+          if (fields[0].equals("+") && fields.length == 5) {
+            Entry entry = new Entry(fields[4], Short.parseShort(fields[1]), fields[2], fields[3]);
+            pending.remove(entry.path);
+            pending.put(entry.path, entry);
+          } else if (fields[0].equals("-") && fields.length == 2) {
+            pending.remove(fields[1]);
+          }
+        } catch (NumberFormatException e) {
+          // a line cut short by a crash
+          log.warn("Skipping journal line: " + line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Rewrite the journal with the pending files only, which also repairs a
+   * journal a write failed on
+   */
+  private void compact() {
+    try {
+      if (writer != null) {
+        Writer old = writer;
+        writer = null;
+        old.close();
+      }
+      File tmp = new File(journal.getPath() + ".tmp");
+      Writer out = new OutputStreamWriter(new FileOutputStream(tmp), UTF8);
+      try {
+        for (Entry entry : pending.values()) {
+          out.write(entry.toLine());
+        }
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(journal)) {
+        throw new IOException("Can't rename " + tmp + " to " + journal);
+      }
+      writer = new OutputStreamWriter(new FileOutputStream(journal, true), UTF8);
+      journalLines = pending.size();
+      if (broken) {
+        log.info("Replication journal " + journal + " written again");
+        broken = false;
+      }
+    } catch (IOException e) {
+      journalError(e);
+    }
+  }
+
+  private void append(String line) {
+    if (broken) {
+      return;
+    }
+    try {
+      writer.write(line);
+      writer.flush();
+      journalLines++;
+    } catch (IOException e) {
+      journalError(e);
+    }
+  }
+
+  private void journalError(IOException e) {
+    journalErrors.incrementAndGet();
+    if (!broken) {
+      log.error("Can't write the replication journal " + journal
+              + ", uploads get their target replication directly", e);
+      broken = true;
+    }
+  }
+
+  /**
+   * Get the replication uploads are written with
+   *
+   * @return landing replication
+   */
+  public short getLandingReplication() {
+    return landingReplication;
+  }
+
+  /**
+   * Checks if files with the target replication are written with the
+   * landing replication first
+   *
+   * @param replication target replication
+   * @return true if the target replication is higher than the landing one
+   */
+  public boolean isLanding(short replication) {
+    return replication > landingReplication && !broken && !isStalled();
+  }
+
+  /**
+   * Queue the file to get its target replication when the stream is closed
+   *
+   * @param out stream writing the file with the landing replication
+   * @param path file written
+   * @param user FTP user of the upload
+   * @param replication target replication
+   * @return stream queueing the file when it is closed
+   * @throws IOException if the stream can't be wrapped
+   */
+  public FSDataOutputStream land(FSDataOutputStream out, final Path path, final HdfsUser user,
+          final short replication) throws IOException {
+    return new FSDataOutputStream(out, null) {
+      private boolean closed = false;
+
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          if (!closed) {
+            closed = true;
+            add(path, user, replication);
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Queue the file to get the target replication. A file queued again is
+   * moved to the end of the queue.
+   *
+   * @param path file to replicate
+   * @param user FTP user of the upload
+   * @param replication target replication
+   */
+  public void add(Path path, HdfsUser user, short replication) {
+    Entry entry = new Entry(HdfsFileStatusCache.key(path).toString(), replication,
+            user.getName(), user.getMainGroup());
+    if (isStalled()) {
+      replicate(entry);
+      return;
+    }
+    synchronized (this) {
+      append(entry.toLine());
+      pending.remove(entry.path);
+      pending.put(entry.path, entry);
+      notifyAll();
+    }
+  }
+
+  /**
+   * Rename a file or directory, moving its queued files to the new name
+   *
+   * @param dfs filesystem of the file
+   * @param src file or directory renamed
+   * @param dst new name, or existing directory to move it into
+   * @return true if it was renamed
+   * @throws IOException if HDFS fails the rename
+   */
+  public boolean rename(DistributedFileSystem dfs, Path src, Path dst) throws IOException {
+    String from = HdfsFileStatusCache.key(src).toString();
+    renames.readLock().lock();
+    try {
+      boolean queued;
+      synchronized (this) {
+        queued = findBelow(from);
+      }
+      if (!queued) {
+        return dfs.rename(src, dst);
+      }
+      Path target = dfs.isDirectory(dst) ? new Path(dst, src.getName()) : dst;
+      if (!dfs.rename(src, dst)) {
+        return false;
+      }
+      moved(from, HdfsFileStatusCache.key(target).toString());
+      return true;
+    } finally {
+      renames.readLock().unlock();
+    }
+  }
+
+  private boolean findBelow(String dir) {
+    for (String file : pending.keySet()) {
+      if (isBelow(file, dir)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isBelow(String file, String dir) {
+    return file.equals(dir) || file.startsWith(dir.endsWith("/") ? dir : dir + "/");
+  }
+
+  /**
+   * Move the queued files at or below from to to, keeping their place in the
+   * queue
+   */
+  private synchronized void moved(String from, String to) {
+    LinkedHashMap<String, Entry> renamed = new LinkedHashMap<String, Entry>();
+    for (Map.Entry<String, Entry> e : pending.entrySet()) {
+      Entry entry = e.getValue();
+      if (isBelow(entry.path, from)) {
+        Entry moved = new Entry(to + entry.path.substring(from.length()), entry.replication,
+                entry.userName, entry.group);
+        append("-\t" + entry.path + "\n");
+        append(moved.toLine());
+        renamed.remove(moved.path);
+        renamed.put(moved.path, moved);
+      } else if (!renamed.containsKey(entry.path)) {
+        renamed.put(entry.path, entry);
+      }
+    }
+    pending.clear();
+    pending.putAll(renamed);
+  }
+
+  /**
+   * Get the number of files waiting for their target replication
+   *
+   * @return backlog of the queue
+   */
+  public synchronized int getBacklog() {
+    return pending.size();
+  }
+
+  /**
+   * Get the number of lines in the journal
+   *
+   * @return journal lines
+   */
+  synchronized long getJournalLines() {
+    return journalLines;
+  }
+
+  /**
+   * Get the number of files which got their target replication
+   *
+   * @return number of files done
+   */
+  public long getDone() {
+    return done.get();
+  }
+
+  /**
+   * Get the number of attempts which failed and were queued again, or
+   * dropped as not allowed
+   *
+   * @return number of failures
+   */
+  public long getFailed() {
+    return failed.get();
+  }
+
+  /**
+   * Get the number of failed writes of the journal
+   *
+   * @return number of journal errors
+   */
+  public long getJournalErrors() {
+    return journalErrors.get();
+  }
+
+  /**
+   * Checks if the worker thread is gone, so queued files are not replicated
+   *
+   * @return true if the queue doesn't run
+   */
+  public boolean isStalled() {
+    return !stopped && !worker.isAlive();
+  }
+
+  /**
+   * Stop the queue. Pending files stay in the journal.
+   */
+  public void shutdown() {
+    stopped = true;
+    worker.interrupt();
+    synchronized (this) {
+      try {
+        if (writer != null) {
+          writer.close();
+        }
+      } catch (IOException e) {
+        log.debug("Error closing the journal", e);
+      }
+    }
+  }
+
+  private void work() {
+    try {
+      while (!stopped) {
+        Entry entry;
+        synchronized (this) {
+          while (pending.isEmpty()) {
+            wait();
+          }
+          entry = pending.values().iterator().next();
+        }
+        boolean replicated = replicate(entry);
+        synchronized (this) {
+          if (pending.get(entry.path) == entry) {
+            pending.remove(entry.path);
+            if (replicated) {
+              append("-\t" + entry.path + "\n");
+            } else {
+              // try the others first
+              pending.put(entry.path, entry);
+            }
+          }
+          if (broken || pending.isEmpty()
+                  || journalLines > (long) COMPACT_RATIO * pending.size() + COMPACT_MIN_LINES) {
+            compact();
+          }
+        }
+        Thread.sleep(replicated ? pauseMillis : Math.max(pauseMillis, RETRY_MILLIS));
+      }
+    } catch (InterruptedException e) {
+      log.debug("Replication queue stopped");
+    } catch (RuntimeException e) {
+      log.error("Replication queue failed, uploads get their target replication directly", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Set the target replication of the file
+   *
+   * @return false if it has to be tried again
+   */
+  private boolean replicate(Entry entry) {
+    Path path = new Path(entry.path);
+    try {
+      HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, entry.getUser());
+      boolean exists;
+      try {
+        exists = lease.getDfs().setReplication(path, entry.replication);
+      } finally {
+        lease.release();
+      }
+      if (exists) {
+        done.incrementAndGet();
+      } else {
+        gone(path);
+      }
+      return true;
+    } catch (FileNotFoundException e) {
+      gone(path);
+      return true;
+    } catch (AccessControlException e) {
+      // trying again won't help until the permissions change
+      log.warn("Not replicating " + path + ", " + entry.userName + " is not allowed to", e);
+      failed.incrementAndGet();
+      return true;
+    } catch (IOException e) {
+      log.warn("Can't set the replication of " + path + ", trying again later", e);
+      failed.incrementAndGet();
+      return false;
+    } catch (RuntimeException e) {
+      log.warn("Can't set the replication of " + path + ", trying again later", e);
+      failed.incrementAndGet();
+      return false;
+    }
+  }
+
+  /**
+   * Wait for the renames in progress, which move the file if it was renamed
+   * away
+   */
+  private void gone(Path path) {
+    renames.writeLock().lock();
+    renames.writeLock().unlock();
+    log.debug("Not replicating " + path + ", it is gone");
+  }
+
+  /**
+   * File waiting for its target replication
+   */
+  private static class Entry {
+
+    private final String path;
+    private final short replication;
+    private final String userName;
+    private final String group;
+
+    Entry(String path, short replication, String userName, String group) {
+      this.path = path;
+      this.replication = replication;
+      this.userName = userName;
+      this.group = group;
+    }
+
+    HdfsUser getUser() {
+      HdfsUser user = new HdfsUser();
+      user.setName(userName);
+      ArrayList<String> groups = new ArrayList<String>();
+      groups.add(group);
+      user.setGroups(groups);
+      return user;
+    }
+
+    String toLine() {
+      return "+\t" + replication + "\t" + userName + "\t" + group + "\t" + path + "\n";
+    }
+  }
+}
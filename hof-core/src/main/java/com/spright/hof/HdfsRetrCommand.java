@@ -0,0 +1,51 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * RETR command which lets HDFS files read local blocks straight from the
+ * DataNode block files when the data connection is not encrypted. The
+ * transfer itself is done by the default command.
+ */
+public class HdfsRetrCommand extends AbstractCommand {
+
+  private final AbstractCommand fallback;
+
+  /**
+   * Constructs HdfsRetrCommand
+   *
+   * @param fallback default command doing the transfer
+   */
+  public HdfsRetrCommand(AbstractCommand fallback) {
+    this.fallback = fallback;
+  }
+
+  public void execute(final FtpIoSession session,
+          final FtpServerContext context, final FtpRequest request)
+          throws IOException, FtpException {
+
+    FileSystemView view = session.getFileSystemView();
+    boolean localBlockReads = HdfsOverFtpSystem.isLocalBlockReads()
+            && view instanceof HdfsFileSystemView
+            && !session.getDataConnection().isSecure();
+    if (!localBlockReads) {
+      fallback.execute(session, context, request);
+      return;
+    }
+
+    HdfsFileSystemView hdfsView = (HdfsFileSystemView) view;
+    hdfsView.setLocalBlockReads(true);
+    try {
+      fallback.execute(session, context, request);
+    } finally {
+      hdfsView.setLocalBlockReads(false);
+    }
+  }
+}
@@ -0,0 +1,376 @@
+package com.spright.hof;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads sent in parts over several connections. A client declares the size
+ * of the file and the number of parts, then sends each part with REST at the
+ * part offset and STOR. Every part is written to its own file next to the
+ * target, and when the last part is done the part files are concatenated
+ * into the target with a single NameNode operation. Parts are a multiple of
+ * the block size, as concat requires full blocks in all but the last file.
+ */
+public class HdfsSegmentedUploads {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsSegmentedUploads.class);
+
+  private final static int DEFAULT_MAX_PARTS = 10000;
+
+  private final Cache<String, Upload> uploads;
+  private final int maxParts;
+
+  /**
+   * Constructs HdfsSegmentedUploads
+   *
+   * @param timeoutMillis time in milliseconds after which an upload without
+   * activity is dropped together with its parts
+   */
+  public HdfsSegmentedUploads(long timeoutMillis) {
+    this(timeoutMillis, DEFAULT_MAX_PARTS);
+  }
+
+  /**
+   * Constructs HdfsSegmentedUploads
+   *
+   * @param timeoutMillis time in milliseconds after which an upload without
+   * activity is dropped together with its parts
+   * @param maxParts maximum number of parts of an upload
+   */
+  public HdfsSegmentedUploads(long timeoutMillis, int maxParts) {
+    this.maxParts = maxParts;
+    this.uploads = CacheBuilder.newBuilder()
+            .expireAfterAccess(timeoutMillis, TimeUnit.MILLISECONDS)
+            .removalListener(new RemovalListener<String, Upload>() {
+              public void onRemoval(RemovalNotification<String, Upload> notification) {
+                if (notification.getCause() == RemovalCause.EXPIRED) {
+                  notification.getValue().deleteParts();
+                }
+              }
+            })
+            .build();
+  }
+
+  private static long divideRoundingUp(long dividend, long divisor) {
+    return dividend / divisor + (dividend % divisor == 0 ? 0 : 1);
+  }
+
+  private static String key(Path path) {
+    return HdfsFileStatusCache.key(path).toString();
+  }
+
+  /**
+   * Declare an upload in parts, replacing an earlier declaration of the file
+   *
+   * @param path file to upload
+   * @param user FTP user of the upload
+   * @param size size of the file in bytes
+   * @param parts number of parts wanted by the client
+   * @return the upload, with the part size and number of parts to send
+   * @throws IOException if the block size can't be fetched
+   * @throws IllegalArgumentException if the size or the number of parts is
+   * out of range
+   */
+  public Upload declare(Path path, HdfsUser user, long size, int parts) throws IOException {
+    if (size <= 0 || parts <= 0) {
+      throw new IllegalArgumentException("size and parts must be positive");
+    }
+    if (parts > maxParts) {
+      throw new IllegalArgumentException("at most " + maxParts + " parts");
+    }
+    HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
+    long blockSize;
+    short replication;
+    String storagePolicy;
+    try {
+      DistributedFileSystem dfs = lease.getDfs();
+      HdfsUploadPolicy.Rule rule = HdfsOverFtpSystem.getUploadPolicy().ruleFor(path, user, size);
+      blockSize = rule.getBlockSize(dfs, path);
+      replication = rule.getReplication(dfs, path);
+      storagePolicy = rule.getStoragePolicy();
+    } finally {
+      lease.release();
+    }
+    // rounded up without overflowing for sizes close to Long.MAX_VALUE
+    long partSize = divideRoundingUp(size, parts);
+    if (partSize > Long.MAX_VALUE - blockSize) {
+      throw new IllegalArgumentException("size is too large");
+    }
+    partSize = divideRoundingUp(partSize, blockSize) * blockSize;
+    Upload upload = new Upload(path, user, size, partSize, blockSize, replication,
+            storagePolicy);
+    Upload previous = uploads.asMap().put(key(path), upload);
+    if (previous != null) {
+      previous.deleteParts();
+    }
+    log.info("Upload of " + path + " in " + upload.getParts() + " parts of " + partSize
+            + " bytes");
+    return upload;
+  }
+
+  /**
+   * Get the declared upload of the file
+   *
+   * @param path file being uploaded
+   * @return the upload or null if the file is not uploaded in parts
+   */
+  public Upload get(Path path) {
+    return uploads.getIfPresent(key(path));
+  }
+
+  private void remove(Upload upload) {
+    uploads.asMap().remove(key(upload.path), upload);
+  }
+
+  /**
+   * Drop a declared upload together with its parts, as the file is written
+   * otherwise
+   *
+   * @param upload upload to drop
+   */
+  public void cancel(Upload upload) {
+    if (uploads.asMap().remove(key(upload.path), upload)) {
+      log.info("Upload in parts of " + upload.path + " dropped, the file is written otherwise");
+      upload.deleteParts();
+    }
+  }
+
+  /**
+   * Get the number of uploads in progress
+   *
+   * @return number of declared uploads
+   */
+  public long size() {
+    uploads.cleanUp();
+    return uploads.size();
+  }
+
+  /**
+   * File uploaded in parts
+   */
+  public class Upload {
+
+    private final Path path;
+    private final HdfsUser user;
+    private final long size;
+    private final long partSize;
+    private final long blockSize;
+    private final short replication;
+    private final String storagePolicy;
+    private final boolean[] done;
+    private boolean committed = false;
+
+    Upload(Path path, HdfsUser user, long size, long partSize, long blockSize,
+            short replication, String storagePolicy) {
+      this.path = HdfsFileStatusCache.key(path);
+      this.user = user;
+      this.size = size;
+      this.partSize = partSize;
+      this.blockSize = blockSize;
+      this.replication = replication;
+      this.storagePolicy = storagePolicy;
+      this.done = new boolean[(int) divideRoundingUp(size, partSize)];
+    }
+
+    /**
+     * Checks if the upload was declared by the user
+     *
+     * @param user FTP user sending a part
+     * @return true if the parts of the user belong to this upload
+     */
+    public boolean isDeclaredBy(HdfsUser user) {
+      return this.user.getName().equals(user.getName());
+    }
+
+    /**
+     * Get the number of bytes of every part but the last
+     *
+     * @return part size in bytes
+     */
+    public long getPartSize() {
+      return partSize;
+    }
+
+    /**
+     * Get the number of parts to send
+     *
+     * @return number of parts
+     */
+    public int getParts() {
+      return done.length;
+    }
+
+    private Path partPath(int part) {
+      return new Path(path.getParent(), "." + path.getName() + ".part-" + part);
+    }
+
+    private long partLength(int part) {
+      return part < done.length - 1 ? partSize : size - partSize * (done.length - 1);
+    }
+
+    /**
+     * Create the file of the part starting at the offset
+     *
+     * @param dfs filesystem of the upload
+     * @param offset REST offset of the transfer
+     * @return stream writing the part, which finishes the upload when it is
+     * closed after the last part
+     * @throws IOException if the offset is not the start of a part
+     */
+    OutputStream createPart(DistributedFileSystem dfs, long offset) throws IOException {
+      if (offset % partSize != 0 || offset / partSize >= done.length) {
+        throw new IOException("Offset " + offset + " is not the start of a part of " + path);
+      }
+      int part = (int) (offset / partSize);
+      synchronized (this) {
+        if (committed) {
+          throw new IOException("Upload of " + path + " is already complete");
+        }
+        done[part] = false;
+      }
+      Path partPath = partPath(part);
+      HdfsReplicationQueue queue = HdfsOverFtpSystem.getReplicationQueue();
+      FSDataOutputStream out = dfs.create(partPath, true,
+              dfs.getConf().getInt("io.file.buffer.size", 4096),
+              queue != null && queue.isLanding(replication)
+              ? queue.getLandingReplication() : replication, blockSize);
+      if (!HdfsOverFtpSystem.isProxyUser()) {
+        dfs.setOwner(partPath, user.getName(), user.getMainGroup());
+      }
+      // blocks are placed as the policy says when they are written
+      if (storagePolicy != null) {
+        dfs.setStoragePolicy(partPath, storagePolicy);
+      }
+      return new PartOutputStream(out, dfs, part);
+    }
+
+    private void partDone(DistributedFileSystem dfs, int part, long written) throws IOException {
+      if (written != partLength(part)) {
+        throw new IOException("Part " + part + " of " + path + " has " + written
+                + " bytes instead of " + partLength(part));
+      }
+      synchronized (this) {
+        done[part] = true;
+        for (boolean partDone : done) {
+          if (!partDone || committed) {
+            return;
+          }
+        }
+        committed = true;
+      }
+      commit(dfs);
+    }
+
+    private void commit(DistributedFileSystem dfs) throws IOException {
+      Path target = partPath(0);
+      if (done.length > 1) {
+        Path[] sources = new Path[done.length - 1];
+        for (int i = 1; i < done.length; i++) {
+          sources[i - 1] = partPath(i);
+        }
+        try {
+          dfs.concat(target, sources);
+        } catch (IOException e) {
+          // the parts are left as they were, sending a part again retries
+          synchronized (this) {
+            committed = false;
+          }
+          throw e;
+        }
+      }
+      try {
+        dfs.rename(target, path, Options.Rename.OVERWRITE);
+      } catch (IOException e) {
+        // the parts are gone into the first one, the upload has to start over
+        remove(this);
+        deleteParts();
+        throw e;
+      }
+      remove(this);
+      HdfsOverFtpSystem.invalidate(path);
+      HdfsReplicationQueue queue = HdfsOverFtpSystem.getReplicationQueue();
+      if (queue != null && queue.isLanding(replication)) {
+        queue.add(path, user, replication);
+      }
+      log.info("Upload of " + path + " complete");
+    }
+
+    private void deleteParts() {
+      try {
+        HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
+        try {
+          for (int i = 0; i < done.length; i++) {
+            lease.getDfs().delete(partPath(i), false);
+          }
+        } finally {
+          lease.release();
+        }
+      } catch (IOException e) {
+        log.warn("Error deleting the parts of " + path, e);
+      }
+    }
+
+    /**
+     * Output stream of a part, which can't write past the end of the part
+     */
+    private class PartOutputStream extends FilterOutputStream {
+
+      private final DistributedFileSystem dfs;
+      private final int part;
+      private long written = 0;
+      private long touched = System.currentTimeMillis();
+      private boolean closed = false;
+
+      PartOutputStream(OutputStream out, DistributedFileSystem dfs, int part) {
+        super(out);
+        this.dfs = dfs;
+        this.part = part;
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if (written + len > partLength(part)) {
+          throw new IOException("Part " + part + " of " + path + " is longer than "
+                  + partLength(part) + " bytes");
+        }
+        out.write(b, off, len);
+        written += len;
+        // a long part keeps the upload from timing out
+        long now = System.currentTimeMillis();
+        if (now - touched > 60000) {
+          touched = now;
+          get(path);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        out.close();
+        partDone(dfs, part, written);
+      }
+    }
+  }
+}
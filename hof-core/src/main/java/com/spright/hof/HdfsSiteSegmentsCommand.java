@@ -0,0 +1,79 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * SITE SEGMENTS command which declares an upload in parts:
+ * "SITE SEGMENTS &lt;size&gt; &lt;parts&gt; &lt;file&gt;". The reply
+ * "200 SEGMENTS &lt;part-size&gt; &lt;parts&gt;" tells the client how to
+ * split the file, each part is then sent with REST at its offset and STOR.
+ */
+public class HdfsSiteSegmentsCommand extends AbstractCommand {
+
+  private final Logger log = LoggerFactory.getLogger(HdfsSiteSegmentsCommand.class);
+
+  public void execute(final FtpIoSession session,
+          final FtpServerContext context, final FtpRequest request)
+          throws IOException, FtpException {
+
+    session.resetState();
+
+    HdfsSegmentedUploads uploads = HdfsOverFtpSystem.getSegmentedUploads();
+    if (uploads == null) {
+      session.write(new DefaultFtpReply(FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED,
+              "Uploads in parts are disabled"));
+      return;
+    }
+
+    // the argument still starts with SEGMENTS
+    String[] args = request.getArgument().split(" ", 4);
+    long size;
+    int parts;
+    try {
+      size = Long.parseLong(args[1]);
+      parts = Integer.parseInt(args[2]);
+    } catch (RuntimeException e) {
+      args = null;
+      size = 0;
+      parts = 0;
+    }
+    if (args == null || args.length < 4 || size <= 0 || parts <= 0) {
+      session.write(new DefaultFtpReply(
+              FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+              "SITE SEGMENTS <size> <parts> <file>"));
+      return;
+    }
+
+    FtpFile file = session.getFileSystemView().getFile(args[3]);
+    if (!(file instanceof HdfsFileObject)) {
+      session.write(new DefaultFtpReply(FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+              "Not an HDFS file: " + args[3]));
+      return;
+    }
+    try {
+      HdfsSegmentedUploads.Upload upload = ((HdfsFileObject) file).declareUpload(uploads, size,
+              parts);
+      session.write(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY,
+              "SEGMENTS " + upload.getPartSize() + " " + upload.getParts()));
+    } catch (IllegalArgumentException e) {
+      session.write(new DefaultFtpReply(
+              FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+              "SITE SEGMENTS <size> <parts> <file>: " + e.getMessage()));
+    } catch (IOException e) {
+      log.debug("Upload in parts of " + args[3] + " refused", e);
+      session.write(new DefaultFtpReply(FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+              e.getMessage()));
+    }
+  }
+}
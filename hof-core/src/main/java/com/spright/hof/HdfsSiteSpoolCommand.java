@@ -0,0 +1,54 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * SITE SPOOL command which replies with the uploads of the session user in
+ * the write-behind spool, one "path state bytes" line each.
+ * "SITE SPOOL &lt;file&gt;" only shows the uploads of the file.
+ */
+public class HdfsSiteSpoolCommand extends AbstractCommand {
+
+  public void execute(final FtpIoSession session,
+          final FtpServerContext context, final FtpRequest request)
+          throws IOException, FtpException {
+
+    session.resetState();
+
+    HdfsUploadSpool spool = HdfsOverFtpSystem.getUploadSpool();
+    if (spool == null) {
+      session.write(new DefaultFtpReply(FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED,
+              "Upload spool is disabled"));
+      return;
+    }
+
+    // the argument still starts with SPOOL
+    String[] args = request.getArgument().split(" ", 2);
+    String prefix = null;
+    if (args.length > 1 && args[1].trim().length() > 0) {
+      FtpFile file = session.getFileSystemView().getFile(args[1].trim());
+      if (file != null) {
+        prefix = file.getAbsolutePath() + " ";
+      }
+    }
+
+    StringBuilder sb = new StringBuilder("Upload spool");
+    // uploads of other users are not shown
+    for (String line : spool.list(session.getUser().getName())) {
+      if (prefix == null || line.startsWith(prefix)) {
+        sb.append('\n').append(line);
+      }
+    }
+    sb.append("\nEnd");
+    session.write(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY, sb.toString()));
+  }
+}
@@ -0,0 +1,33 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * SITE STATS command which replies with the transfer counters of the server,
+ * one "name: value" line each
+ */
+public class HdfsSiteStatsCommand extends AbstractCommand {
+
+  public void execute(final FtpIoSession session,
+          final FtpServerContext context, final FtpRequest request)
+          throws IOException, FtpException {
+
+    session.resetState();
+
+    StringBuilder sb = new StringBuilder("Server statistics");
+    for (Map.Entry<String, Long> counter : HdfsOverFtpSystem.getStatistics().entrySet()) {
+      sb.append('\n').append(counter.getKey()).append(": ").append(counter.getValue());
+    }
+    sb.append("\nEnd");
+    session.write(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY, sb.toString()));
+  }
+}
@@ -0,0 +1,82 @@
+package com.spright.hof;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.hadoop.fs.Path;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers paths changed through this server while a standby NameNode may
+ * not have caught up with them yet. Metadata reads of those paths go to the
+ * active NameNode, so a session always sees its own changes.
+ */
+public class HdfsStandbyReads {
+
+  private final Cache<String, Boolean> changed;
+  private final Cache<String, Boolean> changedTrees;
+
+  /**
+   * Constructs HdfsStandbyReads
+   *
+   * @param lagMillis time in milliseconds the standby may lag behind the
+   * active NameNode
+   * @param maxEntries maximum number of remembered paths
+   */
+  public HdfsStandbyReads(long lagMillis, long maxEntries) {
+    changed = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(lagMillis, TimeUnit.MILLISECONDS)
+            .build();
+    changedTrees = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(lagMillis, TimeUnit.MILLISECONDS)
+            .build();
+  }
+
+  /**
+   * Remember that the path and its parent have been changed
+   *
+   * @param path changed path
+   */
+  public void changed(Path path) {
+    changed.put(HdfsFileStatusCache.key(path).toString(), Boolean.TRUE);
+    Path parent = path.getParent();
+    if (parent != null) {
+      changed.put(HdfsFileStatusCache.key(parent).toString(), Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Remember that the path, everything below it and its parent have been
+   * changed
+   *
+   * @param path changed path
+   */
+  public void changedTree(Path path) {
+    changed(path);
+    changedTrees.put(HdfsFileStatusCache.key(path).toString(), Boolean.TRUE);
+  }
+
+  /**
+   * Checks if the path has been changed recently
+   *
+   * @param path path to read
+   * @return true if the path has to be read from the active NameNode
+   */
+  public boolean isChanged(Path path) {
+    Path key = HdfsFileStatusCache.key(path);
+    if (changed.getIfPresent(key.toString()) != null) {
+      return true;
+    }
+    if (changedTrees.size() == 0) {
+      return false;
+    }
+    for (Path p = key; p != null; p = p.getParent()) {
+      if (changedTrees.getIfPresent(p.toString()) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,50 @@
+package com.spright.hof;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * STOR, STOU and APPE command which hands the size declared by a preceding
+ * ALLO to the HDFS files of the upload. The transfer itself is done by the
+ * default command.
+ */
+public class HdfsUploadCommand extends AbstractCommand {
+
+  private final AbstractCommand fallback;
+
+  /**
+   * Constructs HdfsUploadCommand
+   *
+   * @param fallback default command doing the transfer
+   */
+  public HdfsUploadCommand(AbstractCommand fallback) {
+    this.fallback = fallback;
+  }
+
+  public void execute(final FtpIoSession session,
+          final FtpServerContext context, final FtpRequest request)
+          throws IOException, FtpException {
+
+    // the declared size only holds for the next upload
+    Object size = session.removeAttribute(HdfsAlloCommand.SIZE_ATTRIBUTE);
+    FileSystemView view = session.getFileSystemView();
+    if (size == null || !(view instanceof HdfsFileSystemView)) {
+      fallback.execute(session, context, request);
+      return;
+    }
+
+    HdfsFileSystemView hdfsView = (HdfsFileSystemView) view;
+    hdfsView.setDeclaredSize((Long) size);
+    try {
+      fallback.execute(session, context, request);
+    } finally {
+      hdfsView.setDeclaredSize(-1);
+    }
+  }
+}
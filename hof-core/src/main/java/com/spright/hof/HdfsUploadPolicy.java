@@ -0,0 +1,240 @@
+package com.spright.hof;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rules choosing how uploaded files are created: block size, replication,
+ * buffer size and storage policy. A rule matches on the path prefix, the user
+ * or group and the size of the upload, the first matching rule is used and
+ * files no rule matches get the cluster defaults.
+ */
+public class HdfsUploadPolicy {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsUploadPolicy.class);
+
+  private final static Rule DEFAULTS = new Rule("defaults");
+
+  private final List<Rule> rules = new ArrayList<Rule>();
+
+  /**
+   * Add a rule after the existing ones
+   *
+   * @param rule rule to add
+   */
+  public void addRule(Rule rule) {
+    rules.add(rule);
+  }
+
+  /**
+   * Checks if there are no rules
+   *
+   * @return true if all files get the cluster defaults
+   */
+  public boolean isEmpty() {
+    return rules.isEmpty();
+  }
+
+  /**
+   * Find the rule for an upload
+   *
+   * @param path file uploaded
+   * @param user FTP user of the upload
+   * @param size size of the upload, -1 if it is not known
+   * @return the first matching rule or null
+   */
+  public Rule match(Path path, HdfsUser user, long size) {
+    String file = HdfsFileStatusCache.key(path).toString();
+    for (Rule rule : rules) {
+      if (rule.matches(file, user, size)) {
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find the rule for an upload, falling back to the cluster defaults
+   *
+   * @param path file uploaded
+   * @param user FTP user of the upload
+   * @param size size of the upload, -1 if it is not known
+   * @return the first matching rule or a rule with no settings
+   */
+  public Rule ruleFor(Path path, HdfsUser user, long size) {
+    Rule rule = match(path, user, size);
+    return rule == null ? DEFAULTS : rule;
+  }
+
+  /**
+   * Create the file as the matching rule says, overwriting it. With a
+   * replication queue the file is written with the landing replication and
+   * queued to get its target replication once it is closed.
+   *
+   * @param dfs filesystem to create the file in
+   * @param path file uploaded
+   * @param user FTP user of the upload
+   * @param size size of the upload, -1 if it is not known
+   * @return stream writing the file
+   * @throws IOException if the file can't be created
+   */
+  public FSDataOutputStream create(DistributedFileSystem dfs, Path path, HdfsUser user, long size)
+          throws IOException {
+    Rule rule = match(path, user, size);
+    HdfsReplicationQueue queue = HdfsOverFtpSystem.getReplicationQueue();
+    if (rule == null && queue == null) {
+      return dfs.create(path);
+    }
+    if (rule == null) {
+      rule = DEFAULTS;
+    } else {
+      log.debug("Creating " + path + " with upload policy " + rule.getName());
+    }
+    short replication = rule.getReplication(dfs, path);
+    boolean landing = queue != null && queue.isLanding(replication);
+    FSDataOutputStream out = dfs.create(path, true, rule.getBufferSize(dfs),
+            landing ? queue.getLandingReplication() : replication, rule.getBlockSize(dfs, path));
+    if (rule.getStoragePolicy() != null) {
+      try {
+        dfs.setStoragePolicy(path, rule.getStoragePolicy());
+      } catch (IOException e) {
+        out.close();
+        throw e;
+      }
+    }
+    return landing ? queue.land(out, path, user, replication) : out;
+  }
+
+  /**
+   * Rule of the upload policy. Conditions and settings which are not set
+   * match everything and keep the cluster defaults.
+   */
+  public static class Rule {
+
+    private final String name;
+    private String prefix = null;
+    private String user = null;
+    private String group = null;
+    private long minSize = -1;
+    private long maxSize = -1;
+    private long blockSize = 0;
+    private short replication = 0;
+    private int bufferSize = 0;
+    private String storagePolicy = null;
+
+    /**
+     * Constructs Rule
+     *
+     * @param name name of the rule, for the logs
+     */
+    public Rule(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Match files at or below the path
+     */
+    public void setPrefix(String prefix) {
+      this.prefix = prefix.endsWith("/") && prefix.length() > 1
+              ? prefix.substring(0, prefix.length() - 1) : prefix;
+    }
+
+    public void setUser(String user) {
+      this.user = user;
+    }
+
+    public void setGroup(String group) {
+      this.group = group;
+    }
+
+    /**
+     * Match uploads of at least minSize bytes. Uploads of unknown size don't
+     * match a rule with a size condition.
+     */
+    public void setMinSize(long minSize) {
+      this.minSize = minSize;
+    }
+
+    /**
+     * Match uploads of at most maxSize bytes
+     */
+    public void setMaxSize(long maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    public void setBlockSize(long blockSize) {
+      this.blockSize = blockSize;
+    }
+
+    public void setReplication(short replication) {
+      this.replication = replication;
+    }
+
+    public void setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+    }
+
+    public void setStoragePolicy(String storagePolicy) {
+      this.storagePolicy = storagePolicy;
+    }
+
+    /**
+     * Get the storage policy of the files, null to keep the inherited one
+     */
+    public String getStoragePolicy() {
+      return storagePolicy;
+    }
+
+    /**
+     * Get the block size of the files, the cluster default if not set
+     */
+    public long getBlockSize(DistributedFileSystem dfs, Path path) {
+      return blockSize > 0 ? blockSize : dfs.getDefaultBlockSize(path);
+    }
+
+    /**
+     * Get the replication of the files, the cluster default if not set
+     */
+    public short getReplication(DistributedFileSystem dfs, Path path) {
+      return replication > 0 ? replication : dfs.getDefaultReplication(path);
+    }
+
+    /**
+     * Get the write buffer size, the configured default if not set
+     */
+    public int getBufferSize(DistributedFileSystem dfs) {
+      return bufferSize > 0 ? bufferSize : dfs.getConf().getInt("io.file.buffer.size", 4096);
+    }
+
+    boolean matches(String file, HdfsUser user, long size) {
+      if (prefix != null && !prefix.equals("/") && !file.equals(prefix)
+              && !file.startsWith(prefix + "/")) {
+        return false;
+      }
+      if (this.user != null && (user == null || !this.user.equals(user.getName()))) {
+        return false;
+      }
+      if (group != null && (user == null || !user.isGroupMember(group))) {
+        return false;
+      }
+      if ((minSize >= 0 || maxSize >= 0) && size < 0) {
+        return false;
+      }
+      if (minSize >= 0 && size < minSize) {
+        return false;
+      }
+      return maxSize < 0 || size <= maxSize;
+    }
+  }
+}
@@ -0,0 +1,529 @@
+package com.spright.hof;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.security.AccessControlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind spool of uploads. An upload is written at network speed to a
+ * file in a local directory and copied into HDFS afterwards by a committer
+ * thread. The state of every spooled upload is kept in a journal file next to
+ * its data, so uploads not yet committed when the server stops are committed
+ * when it starts again. Uploads superseded by a later write of the same file
+ * are marked in their journal, so they are not committed after a restart
+ * either. The spool has a disk budget: uploads started while it
+ * is full, or declared larger than the space left, go straight to HDFS, and
+ * spooled uploads which reach it wait for committed uploads to free space.
+ * An upload which fails to be written to the spool is dropped when it is
+ * closed, so a partial upload never reaches HDFS.
+ */
+public class HdfsUploadSpool {
+
+  private final static Logger log = LoggerFactory.getLogger(HdfsUploadSpool.class);
+
+  private final static String DATA = ".data";
+  private final static String JOURNAL = ".journal";
+  private final static long RETRY_MILLIS = 60000;
+
+  /**
+   * State of a spooled upload
+   */
+  public enum State {
+    /**
+     * being received from the client
+     */
+    SPOOLING,
+    /**
+     * received, waiting for a committer
+     */
+    QUEUED,
+    /**
+     * being copied into HDFS
+     */
+    COMMITTING,
+    /**
+     * copy into HDFS failed, to be tried again
+     */
+    FAILED
+  }
+
+  private final File dir;
+  private final long maxBytes;
+  private final long waitMillis;
+  private final ScheduledThreadPoolExecutor committers;
+  private final AtomicLong ids = new AtomicLong();
+
+  // guarded by this
+  private final Map<Long, Upload> uploads = new TreeMap<Long, Upload>();
+  private long usedBytes = 0;
+
+  /**
+   * Constructs HdfsUploadSpool and queues the uploads left in the spool
+   * directory
+   *
+   * @param dir local spool directory
+   * @param maxBytes disk budget of the spool in bytes
+   * @param committers number of uploads copied into HDFS at the same time
+   * @param waitMillis time in milliseconds a write waits for space in the
+   * spool before the upload fails
+   * @throws IOException if the spool directory can't be used
+   */
+  public HdfsUploadSpool(File dir, long maxBytes, int committers, long waitMillis)
+          throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't create the spool directory " + dir);
+    }
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.waitMillis = waitMillis;
+    this.committers = new ScheduledThreadPoolExecutor(committers,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hof-spool-%d").build());
+    recover();
+  }
+
+  /**
+   * Queue the uploads received before the server stopped, and drop those it
+   * was still receiving and those superseded by a later write
+   */
+  private void recover() throws IOException {
+    File[] journals = dir.listFiles();
+    long maxId = -1;
+    List<Upload> queued = new ArrayList<Upload>();
+    for (File journal : journals == null ? new File[0] : journals) {
+      String name = journal.getName();
+      if (!name.endsWith(JOURNAL)) {
+        continue;
+      }
+      long id;
+      try {
+        id = Long.parseLong(name.substring(0, name.length() - JOURNAL.length()));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      maxId = Math.max(maxId, id);
+      Properties props = new Properties();
+      InputStream in = new FileInputStream(journal);
+      try {
+        props.load(in);
+      } finally {
+        in.close();
+      }
+      Upload upload = new Upload(id, props.getProperty("path"), props.getProperty("user"),
+              props.getProperty("group"));
+      if (State.valueOf(props.getProperty("state")) == State.SPOOLING) {
+        log.info("Dropping the incomplete upload of " + upload.path);
+        upload.delete();
+        continue;
+      }
+      if (Boolean.parseBoolean(props.getProperty("superseded"))) {
+        log.info("Dropping the upload of " + upload.path + ", the file was written again");
+        upload.delete();
+        continue;
+      }
+      upload.size = upload.data.length();
+      queued.add(upload);
+    }
+    ids.set(maxId + 1);
+    // only the latest upload of a file is committed
+    Map<String, Upload> latest = new TreeMap<String, Upload>();
+    for (Upload upload : queued) {
+      Upload older = latest.get(upload.path);
+      if (older == null || older.id < upload.id) {
+        latest.put(upload.path, upload);
+      } else {
+        older = upload;
+      }
+      if (older != null) {
+        log.info("Dropping the upload of " + older.path + ", the file was written again");
+        older.delete();
+      }
+    }
+    queued.retainAll(latest.values());
+    for (Upload upload : queued) {
+      synchronized (this) {
+        uploads.put(upload.id, upload);
+        usedBytes += upload.size;
+      }
+      log.info("Queueing the upload of " + upload.path + " left in the spool");
+      upload.queue(0);
+    }
+  }
+
+  /**
+   * Start spooling an upload
+   *
+   * @param path file to upload
+   * @param user FTP user of the upload
+   * @return stream writing the upload to the spool, or null if the spool is
+   * full
+   * @throws IOException if the spool files can't be created
+   */
+  public OutputStream create(Path path, HdfsUser user) throws IOException {
+    return create(path, user, -1);
+  }
+
+  /**
+   * Start spooling an upload of a known size
+   *
+   * @param path file to upload
+   * @param user FTP user of the upload
+   * @param size size declared by ALLO, -1 if none
+   * @return stream writing the upload to the spool, or null if the upload
+   * doesn't fit into the spool
+   * @throws IOException if the spool files can't be created
+   */
+  public OutputStream create(Path path, HdfsUser user, long size) throws IOException {
+    Upload upload = new Upload(ids.getAndIncrement(),
+            HdfsFileStatusCache.key(path).toString(), user.getName(), user.getMainGroup());
+    synchronized (this) {
+      if (usedBytes >= maxBytes || (size > 0 && usedBytes + size > maxBytes)) {
+        return null;
+      }
+      supersede(path);
+      uploads.put(upload.id, upload);
+    }
+    try {
+      upload.setState(State.SPOOLING);
+      return new SpoolOutputStream(upload);
+    } catch (IOException e) {
+      drop(upload);
+      throw e;
+    }
+  }
+
+  /**
+   * Keep the spooled uploads of the file from being committed, as it is
+   * written again
+   *
+   * @param path file written
+   */
+  public synchronized void supersede(Path path) {
+    String file = HdfsFileStatusCache.key(path).toString();
+    for (Upload upload : uploads.values()) {
+      if (upload.path.equals(file) && !upload.superseded) {
+        upload.superseded = true;
+        try {
+          upload.journal();
+        } catch (IOException e) {
+          log.error("Can't journal the upload of " + upload.path + " as superseded", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks if an upload of the file is waiting to be committed
+   *
+   * @param path file to check
+   * @return true if the file in HDFS is not the latest upload yet
+   */
+  public synchronized boolean isPending(Path path) {
+    String file = HdfsFileStatusCache.key(path).toString();
+    for (Upload upload : uploads.values()) {
+      if (upload.path.equals(file) && !upload.superseded) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the spooled uploads, oldest first
+   *
+   * @return one "path state bytes" line per upload
+   */
+  public List<String> list() {
+    return list(null);
+  }
+
+  /**
+   * Get the spooled uploads of an FTP user, oldest first
+   *
+   * @param userName FTP user, null for the uploads of all users
+   * @return one "path state bytes" line per upload
+   */
+  public synchronized List<String> list(String userName) {
+    List<String> lines = new ArrayList<String>();
+    for (Upload upload : uploads.values()) {
+      if (userName == null || upload.userName.equals(userName)) {
+        lines.add(upload.path + " " + upload.state + " " + upload.size);
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Get the number of spooled uploads
+   *
+   * @return number of uploads not committed yet
+   */
+  public synchronized int size() {
+    return uploads.size();
+  }
+
+  /**
+   * Get the disk space used by the spool
+   *
+   * @return used bytes
+   */
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /**
+   * Stop the committers. Uploads not committed yet stay in the spool.
+   */
+  public void shutdown() {
+    committers.shutdownNow();
+  }
+
+  /**
+   * Take space in the spool, waiting for committed uploads to free it
+   */
+  private synchronized void reserve(long bytes) throws IOException {
+    long deadline = System.currentTimeMillis() + waitMillis;
+    while (usedBytes + bytes > maxBytes) {
+      long wait = deadline - System.currentTimeMillis();
+      if (wait <= 0) {
+        throw new IOException("Upload spool is full");
+      }
+      try {
+        wait(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for the upload spool");
+      }
+    }
+    usedBytes += bytes;
+  }
+
+  private void drop(Upload upload) {
+    upload.delete();
+    synchronized (this) {
+      if (uploads.remove(upload.id) != null) {
+        usedBytes -= upload.size;
+        notifyAll();
+      }
+    }
+  }
+
+  private void commit(Upload upload) {
+    if (upload.superseded) {
+      log.info("Dropping the upload of " + upload.path + ", the file was written again");
+      drop(upload);
+      return;
+    }
+    Path path = new Path(upload.path);
+    try {
+      upload.setState(State.COMMITTING);
+      HdfsUser user = upload.getUser();
+      HdfsProxyFileSystems.Lease lease = HdfsOverFtpSystem.leaseDfs(path, user);
+      try {
+        DistributedFileSystem dfs = lease.getDfs();
+        FSDataOutputStream out = HdfsOverFtpSystem.getUploadPolicy().create(dfs, path, user,
+                upload.size);
+        try {
+          Files.copy(upload.data, out);
+        } finally {
+          out.close();
+        }
+        if (!HdfsOverFtpSystem.isProxyUser()) {
+          dfs.setOwner(path, user.getName(), user.getMainGroup());
+        }
+      } finally {
+        lease.release();
+      }
+      HdfsOverFtpSystem.invalidate(path);
+      drop(upload);
+      log.info("Committed " + upload.size + " bytes of " + path);
+    } catch (AccessControlException e) {
+      log.error("Upload of " + path + " not allowed, dropping it", e);
+      drop(upload);
+    } catch (IOException e) {
+      log.error("Commit of " + path + " failed, trying again later", e);
+      try {
+        upload.setState(State.FAILED);
+      } catch (IOException journalError) {
+        log.error("Can't journal the state of " + path, journalError);
+      }
+      upload.queue(RETRY_MILLIS);
+    }
+  }
+
+  /**
+   * Upload in the spool
+   */
+  private class Upload implements Runnable {
+
+    private final long id;
+    private final String path;
+    private final String userName;
+    private final String group;
+    private final File data;
+    private final File journal;
+    private volatile State state;
+    private volatile long size = 0;
+    private volatile boolean superseded = false;
+
+    Upload(long id, String path, String userName, String group) {
+      this.id = id;
+      this.path = path;
+      this.userName = userName;
+      this.group = group;
+      this.data = new File(dir, id + DATA);
+      this.journal = new File(dir, id + JOURNAL);
+    }
+
+    HdfsUser getUser() {
+      HdfsUser user = new HdfsUser();
+      user.setName(userName);
+      ArrayList<String> groups = new ArrayList<String>();
+      groups.add(group);
+      user.setGroups(groups);
+      return user;
+    }
+
+    /**
+     * Journal the state, replacing the journal file in one step
+     */
+    synchronized void setState(State state) throws IOException {
+      write(state);
+      this.state = state;
+    }
+
+    /**
+     * Journal the upload again after it was superseded
+     */
+    synchronized void journal() throws IOException {
+      // an upload not journaled yet gets the flag with its first state
+      if (state != null) {
+        write(state);
+      }
+    }
+
+    private void write(State state) throws IOException {
+      Properties props = new Properties();
+      props.setProperty("path", path);
+      props.setProperty("user", userName);
+      props.setProperty("group", group);
+      props.setProperty("state", state.name());
+      props.setProperty("superseded", Boolean.toString(superseded));
+      File tmp = new File(dir, id + JOURNAL + ".tmp");
+      FileOutputStream out = new FileOutputStream(tmp);
+      try {
+        props.store(out, null);
+        out.getFD().sync();
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(journal)) {
+        throw new IOException("Can't write the journal " + journal);
+      }
+    }
+
+    void queue(long delayMillis) {
+      committers.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void run() {
+      commit(this);
+    }
+
+    void delete() {
+      data.delete();
+      journal.delete();
+    }
+  }
+
+  /**
+   * Output stream writing an upload to its spool file
+   */
+  private class SpoolOutputStream extends OutputStream {
+
+    private final Upload upload;
+    private final FileOutputStream file;
+    private final OutputStream out;
+    private boolean closed = false;
+    private IOException failed = null;
+
+    SpoolOutputStream(Upload upload) throws IOException {
+      this.upload = upload;
+      this.file = new FileOutputStream(upload.data);
+      this.out = new BufferedOutputStream(file, 65536);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      try {
+        reserve(len);
+        upload.size += len;
+        out.write(b, off, len);
+      } catch (IOException e) {
+        failed = e;
+        throw e;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (failed != null) {
+        // the transfer failed, the stream is closed after it all the same
+        log.info("Dropping the failed upload of " + upload.path);
+        try {
+          out.close();
+        } catch (IOException e) {
+          log.debug("Error closing the spool file of " + upload.path, e);
+        }
+        drop(upload);
+        return;
+      }
+      try {
+        // the data is on disk before the journal says it is complete
+        out.flush();
+        file.getFD().sync();
+        out.close();
+        upload.setState(State.QUEUED);
+      } catch (IOException e) {
+        drop(upload);
+        throw e;
+      }
+      upload.queue(0);
+    }
+  }
+}
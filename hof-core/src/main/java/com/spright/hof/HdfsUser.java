@@ -7,6 +7,7 @@ import org.apache.log4j.Logger;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 /**
@@ -30,6 +31,9 @@ public class HdfsUser implements User, Serializable {
 
   private ArrayList<String> groups = new ArrayList<String>();
 
+  // hashed copy of groups for membership checks
+  private HashSet<String> groupSet = new HashSet<String>();
+
   private Logger log = Logger.getLogger(HdfsUser.class);
 
   /**
@@ -75,12 +79,7 @@ public class HdfsUser implements User, Serializable {
    * @return true if the user id a member of the group
    */
   public boolean isGroupMember(String group) {
-    for (String userGroup : groups) {
-      if (userGroup.equals(group)) {
-        return true;
-      }
-    }
-    return false;
+    return groupSet.contains(group);
   }
 
   /**
@@ -93,6 +92,7 @@ public class HdfsUser implements User, Serializable {
       log.error("User " + name + " is not a memer of any group");
     }
     this.groups = groups;
+    this.groupSet = new HashSet<String>(groups);
   }
 
   /**
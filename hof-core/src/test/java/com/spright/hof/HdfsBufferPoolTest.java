@@ -0,0 +1,83 @@
+package com.spright.hof;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsBufferPoolTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsBufferPoolTest.class);
+
+  private static final int DEFAULT_BUFFER_SIZE = 1024;
+  private static final int DEFAULT_CAPACITY = 2;
+
+  /**
+   * Test of acquire and release methods, of class HdfsBufferPool.
+   */
+  @Test
+  public void testAcquireRelease() {
+    LOG.info("Start testAcquireRelease");
+    HdfsBufferPool instance = new HdfsBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_CAPACITY);
+    ByteBuffer first = instance.acquire();
+    assertTrue(first.isDirect());
+    assertEquals(DEFAULT_BUFFER_SIZE, first.remaining());
+    assertEquals(1, instance.getInUse());
+
+    first.put((byte) 1);
+    instance.release(first);
+    assertEquals(0, instance.getInUse());
+
+    // released buffers are reused and cleared
+    ByteBuffer second = instance.acquire();
+    assertSame(first, second);
+    assertEquals(DEFAULT_BUFFER_SIZE, second.remaining());
+    assertEquals(1, instance.getAllocated());
+  }
+
+  /**
+   * Test that heap buffers are handed out when the pool is exhausted, of class
+   * HdfsBufferPool.
+   */
+  @Test
+  public void testExhausted() {
+    LOG.info("Start testExhausted");
+    HdfsBufferPool instance = new HdfsBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_CAPACITY);
+    instance.acquire();
+    ByteBuffer last = instance.acquire();
+    ByteBuffer miss = instance.acquire();
+    assertFalse(miss.isDirect());
+    assertEquals(DEFAULT_CAPACITY, instance.getInUse());
+    assertEquals(1, instance.getMisses());
+
+    instance.release(miss);
+    assertEquals(DEFAULT_CAPACITY, instance.getInUse());
+
+    // a discarded buffer makes room for a new one
+    instance.discard(last);
+    assertTrue(instance.acquire().isDirect());
+    assertEquals(DEFAULT_CAPACITY, instance.getAllocated());
+  }
+
+  /**
+   * Test of a pool of heap buffers, of class HdfsBufferPool.
+   */
+  @Test
+  public void testHeap() {
+    LOG.info("Start testHeap");
+    HdfsBufferPool instance = new HdfsBufferPool(DEFAULT_BUFFER_SIZE, 1, false);
+    ByteBuffer first = instance.acquire();
+    assertTrue(first.hasArray());
+    ByteBuffer miss = instance.acquire();
+    assertEquals(1, instance.getMisses());
+
+    // a miss is not taken into the pool
+    instance.release(miss);
+    instance.release(first);
+    assertEquals(0, instance.getInUse());
+    assertSame(first, instance.acquire());
+    assertNotSame(miss, instance.acquire());
+    assertEquals(1, instance.getAllocated());
+  }
+}
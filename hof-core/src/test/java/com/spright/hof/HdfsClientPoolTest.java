@@ -0,0 +1,137 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsClientPoolTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsClientPoolTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+
+  private static final int DEFAULT_SIZE = 3;
+  private static final String DEFAULT_USER = "user";
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsClientPool.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+  }
+
+  private static HdfsUser newUser(String name) {
+    BaseUser user = new BaseUser();
+    user.setName(name);
+    return new HdfsUser(user);
+  }
+
+  /**
+   * Test that all clients are connected, of class HdfsClientPool.
+   */
+  @Test
+  public void testConnect() throws IOException {
+    LOG.info("Start testConnect");
+    HdfsClientPool instance = new HdfsClientPool(CLUSTER.getURI(), CONF, DEFAULT_SIZE,
+            HdfsClientPool.Policy.ROUND_ROBIN);
+    try {
+      assertEquals(DEFAULT_SIZE, instance.size());
+      Set<DistributedFileSystem> clients = new HashSet<DistributedFileSystem>();
+      for (int i = 0; i < DEFAULT_SIZE; i++) {
+        DistributedFileSystem dfs = instance.next();
+        assertTrue(dfs.exists(new Path("/")));
+        clients.add(dfs);
+      }
+      assertEquals(DEFAULT_SIZE, clients.size());
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test of the SESSION policy, of class HdfsClientPool.
+   */
+  @Test
+  public void testSessionPolicy() throws IOException {
+    LOG.info("Start testSessionPolicy");
+    HdfsClientPool instance = new HdfsClientPool(CLUSTER.getURI(), CONF, DEFAULT_SIZE,
+            HdfsClientPool.Policy.SESSION);
+    try {
+      HdfsUser session = newUser(DEFAULT_USER);
+      DistributedFileSystem dfs = instance.get(session);
+      for (int i = 0; i < 10; i++) {
+        assertSame(dfs, instance.get(session));
+      }
+
+      // sessions are spread over the clients
+      Set<DistributedFileSystem> clients = new HashSet<DistributedFileSystem>();
+      for (int i = 0; i < 100; i++) {
+        clients.add(instance.get(newUser(DEFAULT_USER)));
+      }
+      assertTrue(clients.size() > 1);
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test of the USER policy, of class HdfsClientPool.
+   */
+  @Test
+  public void testUserPolicy() throws IOException {
+    LOG.info("Start testUserPolicy");
+    HdfsClientPool instance = new HdfsClientPool(CLUSTER.getURI(), CONF, DEFAULT_SIZE,
+            HdfsClientPool.Policy.USER);
+    try {
+      DistributedFileSystem dfs = instance.get(newUser(DEFAULT_USER));
+      assertSame(dfs, instance.get(newUser(DEFAULT_USER)));
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test of the ROUND_ROBIN policy, of class HdfsClientPool.
+   */
+  @Test
+  public void testRoundRobinPolicy() throws IOException {
+    LOG.info("Start testRoundRobinPolicy");
+    HdfsClientPool instance = new HdfsClientPool(CLUSTER.getURI(), CONF, DEFAULT_SIZE,
+            HdfsClientPool.Policy.ROUND_ROBIN);
+    try {
+      HdfsUser session = newUser(DEFAULT_USER);
+      List<DistributedFileSystem> clients = new ArrayList<DistributedFileSystem>();
+      for (int i = 0; i < DEFAULT_SIZE * 2; i++) {
+        clients.add(instance.get(session));
+      }
+      assertNotSame(clients.get(0), clients.get(1));
+      assertSame(clients.get(0), clients.get(DEFAULT_SIZE));
+    } finally {
+      instance.close();
+    }
+  }
+}
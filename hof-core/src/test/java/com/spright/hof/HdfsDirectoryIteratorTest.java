@@ -0,0 +1,123 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsDirectoryIteratorTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsDirectoryIteratorTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static final String DEFAULT_DIR_PATH = "/listing";
+  private static final String SMALL_DIR_PATH = "/listing/small";
+  private static final int DEFAULT_LS_LIMIT = 2;
+  private static final int DEFAULT_FILES = 5;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsDirectoryIterator.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CONF.setInt(DFSConfigKeys.DFS_LIST_LIMIT, DEFAULT_LS_LIMIT);
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    for (int i = 0; i != DEFAULT_FILES; ++i) {
+      DFS.create(new Path(DEFAULT_DIR_PATH + "/file" + i)).close();
+    }
+    DFS.mkdirs(new Path(SMALL_DIR_PATH));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    DFS.delete(new Path(DEFAULT_DIR_PATH), true);
+  }
+
+  /**
+   * Test that all batches are listed, of class HdfsDirectoryIterator.
+   */
+  @Test
+  public void testPaging() throws IOException {
+    LOG.info("Start testPaging");
+    HdfsFileStatusCache cache = new HdfsFileStatusCache(100, 60000);
+    HdfsDirectoryIterator instance = new HdfsDirectoryIterator(DFS, new Path(DEFAULT_DIR_PATH), cache);
+    Set<String> names = new HashSet<String>();
+    while (instance.hasNext()) {
+      names.add(instance.next().getPath().getName());
+    }
+    // the files and the small directory
+    assertEquals(DEFAULT_FILES + 1, names.size());
+    assertTrue(names.contains("file0"));
+    // a listing spanning several batches is not cached
+    assertNull(cache.getListing(new Path(DEFAULT_DIR_PATH)));
+  }
+
+  /**
+   * Test that a listing which fits in one batch is cached, of class
+   * HdfsDirectoryIterator.
+   */
+  @Test
+  public void testCacheSingleBatch() throws IOException {
+    LOG.info("Start testCacheSingleBatch");
+    DFS.create(new Path(SMALL_DIR_PATH + "/file")).close();
+    HdfsFileStatusCache cache = new HdfsFileStatusCache(100, 60000);
+    HdfsDirectoryIterator instance = new HdfsDirectoryIterator(DFS, new Path(SMALL_DIR_PATH), cache);
+    assertTrue(instance.hasNext());
+    assertEquals("file", instance.next().getPath().getName());
+    assertFalse(instance.hasNext());
+    assertEquals(1, cache.getListing(new Path(SMALL_DIR_PATH)).length);
+  }
+
+  /**
+   * Test of listing a missing directory, of class HdfsDirectoryIterator.
+   */
+  @Test(expected = IOException.class)
+  public void testMissing() throws IOException {
+    LOG.info("Start testMissing");
+    new HdfsDirectoryIterator(DFS, new Path("/missing"), null);
+  }
+
+  /**
+   * Test of of method, of class HdfsDirectoryIterator.
+   */
+  @Test
+  public void testOf() throws IOException {
+    LOG.info("Start testOf");
+    FileStatus status = DFS.getFileStatus(new Path(DEFAULT_DIR_PATH));
+    RemoteIterator<FileStatus> instance = HdfsDirectoryIterator.of(status);
+    assertTrue(instance.hasNext());
+    assertSame(status, instance.next());
+    assertFalse(instance.hasNext());
+  }
+}
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.FileSystemException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,8 +17,11 @@ import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
@@ -172,6 +176,22 @@ public class HdfsFileObjectTest {
     assertFalse(instance2.doesExist());
   }
 
+  /**
+   * Test that the status is fetched once and reused by the accessors.
+   */
+  @Test
+  public void testStatusSnapshot() throws IOException {
+    System.out.println("Start testStatusSnapshot");
+    Path snapshotPath = new Path("/home/snapshot.txt");
+    DFS.create(snapshotPath).close();
+    HdfsFileObject instance = new HdfsFileObject(snapshotPath.toString(), HDFSUSER);
+    assertTrue(instance.isFile());
+
+    DFS.delete(snapshotPath, false);
+    assertTrue(instance.doesExist());
+    assertFalse(new HdfsFileObject(snapshotPath.toString(), HDFSUSER).doesExist());
+  }
+
   /**
    * Test of hasReadPermission method, of class HdfsFileObject.
    */
@@ -196,6 +216,30 @@ public class HdfsFileObjectTest {
     assertFalse(instance2.isWritable());
   }
 
+  /**
+   * Test of group and other permissions, of class HdfsFileObject.
+   */
+  @Test
+  public void testGroupAndOtherPermission() throws IOException {
+    System.out.println("Start testGroupAndOtherPermission");
+    Path groupPath = new Path("/home/group.txt");
+    DFS.create(groupPath).close();
+    DFS.setOwner(groupPath, "someone", "g1");
+    DFS.setPermission(groupPath, new FsPermission((short) 0640));
+
+    HdfsUser member = new HdfsUser(USER);
+    ArrayList<String> groups = new ArrayList<String>();
+    groups.add("g1");
+    member.setGroups(groups);
+    HdfsFileObject instance = new HdfsFileObject(groupPath.toString(), member);
+    assertTrue(instance.isReadable());
+    assertFalse(instance.isWritable());
+
+    HdfsFileObject instance2 = new HdfsFileObject(groupPath.toString(), HDFSUSER);
+    assertFalse(instance2.isReadable());
+    DFS.delete(groupPath, false);
+  }
+
   /**
    * Test of hasDeletePermission method, of class HdfsFileObject.
    */
@@ -308,6 +352,41 @@ public class HdfsFileObjectTest {
     HdfsFileObject instance2 = new HdfsFileObject(DEFAULT_DIR_PATH, HDFSUSER);
     List<FtpFile> result = instance2.listFiles();
     assertEquals("file.txt", result.get(0).getName());
+    assertEquals(DEFAULT_FILE_PATH, result.get(0).getAbsolutePath());
+  }
+
+  /**
+   * Test of streamFiles method, of class HdfsFileObject.
+   */
+  @Test
+  public void testStreamFiles() throws IOException {
+    System.out.println("Start testStreamFiles");
+    HdfsFileObject instance = new HdfsFileObject("..", HDFSUSER);
+    assertNull(instance.streamFiles());
+    HdfsFileObject instance2 = new HdfsFileObject(DEFAULT_DIR_PATH, HDFSUSER);
+    RemoteIterator<FtpFile> result = instance2.streamFiles();
+    assertTrue(result.hasNext());
+    assertEquals("file.txt", result.next().getName());
+
+    HdfsFileObject instance3 = new HdfsFileObject(DEFAULT_FILE_PATH, HDFSUSER);
+    RemoteIterator<FtpFile> result3 = instance3.streamFiles();
+    assertEquals(DEFAULT_FILE_PATH, result3.next().getAbsolutePath());
+    assertFalse(result3.hasNext());
+  }
+
+  /**
+   * Test of constructing HdfsFileObject from a FileStatus.
+   */
+  @Test
+  public void testConstructFromStatus() throws IOException {
+    System.out.println("Start testConstructFromStatus");
+    FileStatus fs = DFS.getFileStatus(new Path(DEFAULT_FILE_PATH));
+    HdfsFileObject instance = new HdfsFileObject(fs, HDFSUSER);
+    assertEquals(DEFAULT_FILE_PATH, instance.getAbsolutePath());
+    assertEquals("file.txt", instance.getName());
+    assertTrue(instance.isFile());
+    assertEquals(fs.getLen(), instance.getSize());
+    assertEquals(fs.getOwner(), instance.getOwnerName());
   }
 
   /**
@@ -326,6 +405,60 @@ public class HdfsFileObjectTest {
     in.close();
   }
 
+  /**
+   * Test of createOutputStream method with an offset, of class HdfsFileObject.
+   */
+  @Test
+  public void testResumeOutputStream() throws IOException {
+    System.out.println("Start testResumeOutputStream");
+    Path resume = new Path("/home/resume.txt");
+    DFS.create(resume).close();
+    DFS.setPermission(resume, DEFAULT_PERMISSION);
+    HdfsFileObject instance = new HdfsFileObject(resume.toString(), HDFSUSER);
+    OutputStream out = instance.createOutputStream(0);
+    out.write(new byte[]{1, 2, 3});
+    out.close();
+
+    // the offset must be the length of the file
+    try {
+      instance.createOutputStream(2);
+      fail("an offset before the end of the file should be refused");
+    } catch (IOException e) {
+      // expected
+    }
+    out = instance.createOutputStream(3);
+    out.write(new byte[]{4, 5});
+    out.close();
+    assertEquals(5, DFS.getFileStatus(resume).getLen());
+    InputStream in = instance.createInputStream(3);
+    assertEquals(4, in.read());
+    in.close();
+  }
+
+  /**
+   * Test of resuming a file left open by another writer, of class
+   * HdfsFileObject.
+   */
+  @Test
+  public void testResumeAfterLostWriter() throws IOException {
+    System.out.println("Start testResumeAfterLostWriter");
+    Path lost = new Path("/home/lost.txt");
+    DistributedFileSystem other = (DistributedFileSystem) FileSystem.newInstance(DFS.getUri(),
+            CONF);
+    FSDataOutputStream lostOut = other.create(lost);
+    lostOut.write(new byte[]{1, 2, 3});
+    lostOut.hflush();
+    DFS.setPermission(lost, DEFAULT_PERMISSION);
+
+    // the lease of the other writer is recovered before appending
+    HdfsFileObject instance = new HdfsFileObject(lost.toString(), HDFSUSER);
+    OutputStream out = instance.createOutputStream(3);
+    out.write(4);
+    out.close();
+    assertTrue(DFS.isFileClosed(lost));
+    assertEquals(4, DFS.getFileStatus(lost).getLen());
+  }
+
   /**
    * Test of createOutputStream and createInputStream method, of class
    * HdfsFileObject.
@@ -0,0 +1,170 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsFileStatusCacheTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsFileStatusCacheTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static final String DEFAULT_DIR_PATH = "/cache";
+  private static final String DEFAULT_FILE_PATH = "/cache/file.txt";
+  private static final long DEFAULT_MAX_ENTRIES = 100;
+  private static final long DEFAULT_TTL = 60000;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsFileStatusCache.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    DFS.mkdirs(new Path(DEFAULT_DIR_PATH));
+    DFS.create(new Path(DEFAULT_FILE_PATH)).close();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    DFS.delete(new Path(DEFAULT_DIR_PATH), true);
+  }
+
+  /**
+   * Test of getFileStatus method, of class HdfsFileStatusCache.
+   */
+  @Test
+  public void testGetFileStatus() throws IOException {
+    LOG.info("Start testGetFileStatus");
+    HdfsFileStatusCache instance = new HdfsFileStatusCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    Path path = new Path(DEFAULT_FILE_PATH);
+    FileStatus first = instance.getFileStatus(DFS, path);
+
+    DFS.delete(path, false);
+    assertSame(first, instance.getFileStatus(DFS, path));
+  }
+
+  /**
+   * Test of listStatus method, of class HdfsFileStatusCache.
+   */
+  @Test
+  public void testListStatus() throws IOException {
+    LOG.info("Start testListStatus");
+    HdfsFileStatusCache instance = new HdfsFileStatusCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    FileStatus[] children = instance.listStatus(DFS, new Path(DEFAULT_DIR_PATH));
+    assertEquals(1, children.length);
+
+    // the listing also primes the status of the children
+    DFS.delete(new Path(DEFAULT_FILE_PATH), false);
+    assertSame(children[0], instance.getFileStatus(DFS, new Path(DEFAULT_FILE_PATH)));
+  }
+
+  /**
+   * Test of invalidate method, of class HdfsFileStatusCache.
+   */
+  @Test
+  public void testInvalidate() throws IOException {
+    LOG.info("Start testInvalidate");
+    HdfsFileStatusCache instance = new HdfsFileStatusCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    Path dir = new Path(DEFAULT_DIR_PATH);
+    assertEquals(1, instance.listStatus(DFS, dir).length);
+
+    Path created = new Path(DEFAULT_DIR_PATH + "/created.txt");
+    DFS.create(created).close();
+    instance.invalidate(created);
+    assertEquals(2, instance.listStatus(DFS, dir).length);
+  }
+
+  /**
+   * Test of invalidateTree method, of class HdfsFileStatusCache.
+   */
+  @Test
+  public void testInvalidateTree() throws IOException {
+    LOG.info("Start testInvalidateTree");
+    HdfsFileStatusCache instance = new HdfsFileStatusCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    Path file = new Path(DEFAULT_FILE_PATH);
+    instance.getFileStatus(DFS, file);
+
+    DFS.delete(new Path(DEFAULT_DIR_PATH), true);
+    instance.invalidateTree(new Path(DEFAULT_DIR_PATH));
+    try {
+      instance.getFileStatus(DFS, file);
+      fail("status of a deleted file should not be cached");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that entries expire, of class HdfsFileStatusCache.
+   */
+  @Test
+  public void testExpire() throws Exception {
+    LOG.info("Start testExpire");
+    HdfsFileStatusCache instance = new HdfsFileStatusCache(DEFAULT_MAX_ENTRIES, 1);
+    Path path = new Path(DEFAULT_FILE_PATH);
+    FileStatus first = instance.getFileStatus(DFS, path);
+    Thread.sleep(10);
+    assertNotSame(first, instance.getFileStatus(DFS, path));
+  }
+
+  /**
+   * Test of findFileStatus method, of class HdfsFileStatusCache.
+   */
+  @Test
+  public void testFindFileStatus() throws IOException {
+    LOG.info("Start testFindFileStatus");
+    HdfsFileStatusCache instance = new HdfsFileStatusCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL, DEFAULT_TTL);
+    Path marker = new Path(DEFAULT_DIR_PATH + "/sub/file.done");
+    assertNull(instance.findFileStatus(DFS, marker));
+
+    // the missing path is remembered
+    DFS.create(marker).close();
+    assertNull(instance.findFileStatus(DFS, marker));
+
+    // creating a path below an ancestor forgets the ancestors too
+    instance.invalidate(new Path(DEFAULT_DIR_PATH + "/sub/file.done/x"));
+    assertNotNull(instance.findFileStatus(DFS, marker));
+  }
+
+  /**
+   * Test that missing paths are not remembered by default, of class
+   * HdfsFileStatusCache.
+   */
+  @Test
+  public void testFindFileStatusWithoutMissing() throws IOException {
+    LOG.info("Start testFindFileStatusWithoutMissing");
+    HdfsFileStatusCache instance = new HdfsFileStatusCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    Path marker = new Path(DEFAULT_DIR_PATH + "/file.done");
+    assertNull(instance.findFileStatus(DFS, marker));
+    DFS.create(marker).close();
+    assertNotNull(instance.findFileStatus(DFS, marker));
+  }
+}
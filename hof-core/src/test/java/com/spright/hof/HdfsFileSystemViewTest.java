@@ -2,12 +2,15 @@ package com.spright.hof;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Future;
 import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
@@ -122,6 +125,86 @@ public class HdfsFileSystemViewTest {
     assertEquals(DEFAULT_DIR_PATH, instance.getWorkingDirectory().getAbsolutePath());
   }
 
+  /**
+   * Test of isGlob method, of class HdfsFileSystemView.
+   */
+  @Test
+  public void testIsGlob() {
+    LOG.info("Start testIsGlob");
+    assertTrue(HdfsFileSystemView.isGlob("*.csv"));
+    assertTrue(HdfsFileSystemView.isGlob("2026-10-*/part-?"));
+    assertFalse(HdfsFileSystemView.isGlob("/home/file.txt"));
+    assertFalse(HdfsFileSystemView.isGlob(null));
+  }
+
+  /**
+   * Test of globFiles method, of class HdfsFileSystemView.
+   */
+  @Test
+  public void testGlobFiles() throws IOException, FtpException {
+    LOG.info("Start testGlobFiles");
+    DFS.create(new Path("/glob/2026-10-01/part-0")).close();
+    DFS.create(new Path("/glob/2026-10-02/part-0")).close();
+    DFS.create(new Path("/glob/2026-10-02/other")).close();
+    DFS.create(new Path("/glob/a.csv")).close();
+    DFS.setPermission(new Path("/glob"), DEFAULT_PERMISSION);
+
+    HdfsFileSystemView instance = new HdfsFileSystemView(HDFSUSER, true);
+    instance.changeWorkingDirectory("/glob");
+    RemoteIterator<FtpFile> csv = instance.globFiles("*.csv");
+    assertEquals("/glob/a.csv", csv.next().getAbsolutePath());
+    assertFalse(csv.hasNext());
+
+    RemoteIterator<FtpFile> parts = instance.globFiles("2026-10-*/part-*");
+    int count = 0;
+    while (parts.hasNext()) {
+      assertEquals("part-0", parts.next().getName());
+      count++;
+    }
+    assertEquals(2, count);
+
+    // nothing matches, which is an empty listing
+    assertFalse(instance.globFiles("*.xml").hasNext());
+
+    // the user can list the parent but can't traverse its ancestor
+    DFS.create(new Path("/glob/locked/inner/part-0")).close();
+    DFS.setPermission(new Path("/glob/locked"), new FsPermission((short) 0744));
+    assertFalse(instance.globFiles("locked/*/part-*").hasNext());
+    DFS.delete(new Path("/glob"), true);
+  }
+
+  /**
+   * Test that the working directory is listed ahead of time, of class
+   * HdfsFileSystemView.
+   */
+  @Test
+  public void testPrefetchListing() throws IOException, FtpException {
+    LOG.info("Start testPrefetchListing");
+    HdfsOverFtpSystem.setListingPrefetcher(1, 1);
+    try {
+      HdfsFileSystemView instance = new HdfsFileSystemView(HDFSUSER, true);
+      // CWD, its reply and PWD get the working directory
+      assertTrue(instance.changeWorkingDirectory(DEFAULT_DIR_PATH));
+      assertEquals(DEFAULT_DIR_PATH, instance.getWorkingDirectory().getAbsolutePath());
+      assertEquals(DEFAULT_DIR_PATH, instance.getWorkingDirectory().getAbsolutePath());
+      // LIST takes the listing
+      HdfsFileObject dir = (HdfsFileObject) instance.getWorkingDirectory();
+      Future<RemoteIterator<FileStatus>> listing = instance.takePrefetchedListing(dir);
+      assertNotNull(listing);
+      assertNull(instance.takePrefetchedListing(dir));
+      dir.setPrefetchedListing(listing);
+      RemoteIterator<FtpFile> result = dir.streamFiles();
+      assertEquals("file.txt", result.next().getName());
+
+      // a file of the directory is accessed, the listing may be stale
+      assertTrue(instance.changeWorkingDirectory(DEFAULT_DIR_PATH));
+      instance.getFile("file.txt");
+      assertNull(instance.takePrefetchedListing(instance.getWorkingDirectory()));
+    } finally {
+      HdfsOverFtpSystem.setListingPrefetcher(0, 0);
+    }
+  }
+
   /**
    * Test of changeDirectory ,getCurrentDirectory method, of class
    * HdfsFileSystemView.
@@ -0,0 +1,116 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsAdmin;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsInotifyTailerTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsInotifyTailerTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static final String DEFAULT_DIR_PATH = "/inotify";
+  private static final String DEFAULT_FILE_PATH = "/inotify/file.txt";
+  private static final long DEFAULT_MAX_ENTRIES = 100;
+  private static final long DEFAULT_TTL = 600000;
+  private static final long DEFAULT_WAIT = 10000;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsInotifyTailer.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    DFS.mkdirs(new Path(DEFAULT_DIR_PATH));
+    DFS.create(new Path(DEFAULT_FILE_PATH)).close();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    DFS.delete(new Path(DEFAULT_DIR_PATH), true);
+  }
+
+  /**
+   * Test of evict method, of class HdfsInotifyTailer.
+   */
+  @Test
+  public void testEvict() {
+    LOG.info("Start testEvict");
+    HdfsFileStatusCache cache = Mockito.mock(HdfsFileStatusCache.class);
+    HdfsInotifyTailer instance = new HdfsInotifyTailer(null, cache);
+
+    Event.UnlinkEvent unlink = Mockito.mock(Event.UnlinkEvent.class);
+    Mockito.when(unlink.getEventType()).thenReturn(Event.EventType.UNLINK);
+    Mockito.when(unlink.getPath()).thenReturn(DEFAULT_FILE_PATH);
+    instance.evict(unlink);
+    Mockito.verify(cache).invalidateTree(new Path(DEFAULT_FILE_PATH));
+
+    Event.RenameEvent rename = Mockito.mock(Event.RenameEvent.class);
+    Mockito.when(rename.getEventType()).thenReturn(Event.EventType.RENAME);
+    Mockito.when(rename.getSrcPath()).thenReturn(DEFAULT_FILE_PATH);
+    Mockito.when(rename.getDstPath()).thenReturn("/inotify/renamed.txt");
+    instance.evict(rename);
+    Mockito.verify(cache).invalidateTree(new Path("/inotify/renamed.txt"));
+  }
+
+  /**
+   * Test that a change made by another client evicts the cached status.
+   */
+  @Test
+  public void testRun() throws Exception {
+    LOG.info("Start testRun");
+    HdfsFileStatusCache cache = new HdfsFileStatusCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    HdfsAdmin admin = new HdfsAdmin(CLUSTER.getURI(), CONF);
+    HdfsInotifyTailer instance = new HdfsInotifyTailer(admin, cache);
+    Thread thread = instance.start();
+    try {
+      Path path = new Path(DEFAULT_FILE_PATH);
+      FileStatus first = cache.getFileStatus(DFS, path);
+      // give the tailer time to open the stream before the change
+      Thread.sleep(1000);
+      DFS.setPermission(path, new FsPermission((short) 0600));
+
+      long deadline = System.currentTimeMillis() + DEFAULT_WAIT;
+      while (cache.getFileStatus(DFS, path) == first
+              && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+      assertNotSame(first, cache.getFileStatus(DFS, path));
+    } finally {
+      instance.stop();
+      thread.join(DEFAULT_WAIT);
+    }
+  }
+}
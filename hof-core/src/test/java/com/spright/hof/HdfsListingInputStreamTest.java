@@ -0,0 +1,64 @@
+package com.spright.hof;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.ftpserver.command.impl.listing.FileFormater;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsListingInputStreamTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsListingInputStreamTest.class);
+
+  private static final FileFormater NAME_FORMATER = new FileFormater() {
+    public String format(FtpFile file) {
+      return file.getName() + "\r\n";
+    }
+  };
+
+  private static RemoteIterator<FtpFile> files(final String... names) {
+    return new RemoteIterator<FtpFile>() {
+      private int index = 0;
+
+      public boolean hasNext() {
+        return index < names.length;
+      }
+
+      public FtpFile next() {
+        FtpFile file = Mockito.mock(FtpFile.class);
+        Mockito.when(file.getName()).thenReturn(names[index++]);
+        return file;
+      }
+    };
+  }
+
+  private static String readAll(InputStream in, int bufferSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[bufferSize];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toString("UTF-8");
+  }
+
+  /**
+   * Test of read method, of class HdfsListingInputStream.
+   */
+  @Test
+  public void testRead() throws IOException {
+    LOG.info("Start testRead");
+    HdfsListingInputStream instance = new HdfsListingInputStream(
+            files("a.csv", "b.txt", "c.csv"), NAME_FORMATER);
+    assertEquals("a.csv\r\nb.txt\r\nc.csv\r\n", readAll(instance, 3));
+
+    HdfsListingInputStream empty = new HdfsListingInputStream(files(), NAME_FORMATER);
+    assertEquals(-1, empty.read());
+  }
+}
@@ -0,0 +1,66 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsListingPrefetcherTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsListingPrefetcherTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static final String DEFAULT_DIR_PATH = "/prefetch";
+  private static final String DEFAULT_FILE_PATH = "/prefetch/file.txt";
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsListingPrefetcher.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+    DFS.create(new Path(DEFAULT_FILE_PATH)).close();
+    HdfsOverFtpSystem.setDfs(DFS);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+    HdfsOverFtpSystem.setDfs(null);
+  }
+
+  /**
+   * Test of prefetch method, of class HdfsListingPrefetcher.
+   */
+  @Test
+  public void testPrefetch() throws Exception {
+    LOG.info("Start testPrefetch");
+    HdfsListingPrefetcher instance = new HdfsListingPrefetcher(1, 1);
+    try {
+      Future<RemoteIterator<FileStatus>> listing = instance.prefetch(new Path(DEFAULT_DIR_PATH), null);
+      RemoteIterator<FileStatus> result = listing.get();
+      assertEquals("file.txt", result.next().getPath().getName());
+      assertFalse(result.hasNext());
+    } finally {
+      instance.shutdown();
+    }
+  }
+}
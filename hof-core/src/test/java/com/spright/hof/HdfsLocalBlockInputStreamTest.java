@@ -0,0 +1,142 @@
+package com.spright.hof;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsLocalBlockInputStreamTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsLocalBlockInputStreamTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static final String DEFAULT_FILE_PATH = "/local/file.bin";
+  private static final int DEFAULT_BLOCK_SIZE = 4096;
+  private static final byte[] DATA = new byte[DEFAULT_BLOCK_SIZE * 3 + 100];
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsLocalBlockInputStream.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CONF.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    CONF.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, DEFAULT_BLOCK_SIZE);
+    CONF.set(DFSConfigKeys.DFS_BLOCK_LOCAL_PATH_ACCESS_USER_KEY,
+            UserGroupInformation.getCurrentUser().getShortUserName());
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) i;
+    }
+    FSDataOutputStream out = DFS.create(new Path(DEFAULT_FILE_PATH));
+    out.write(DATA);
+    out.close();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1000];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Test of read method, of class HdfsLocalBlockInputStream.
+   */
+  @Test
+  public void testRead() throws IOException {
+    LOG.info("Start testRead");
+    HdfsLocalBlockInputStream instance = new HdfsLocalBlockInputStream(DFS,
+            new Path(DEFAULT_FILE_PATH), 0);
+    try {
+      assertArrayEquals(DATA, readAll(instance));
+      assertEquals(-1, instance.read());
+      // all read from the block files, not through HDFS
+      assertEquals(DATA.length, instance.getLocalBytes());
+      assertEquals(0, instance.getRemoteBytes());
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test of reading from an offset, of class HdfsLocalBlockInputStream.
+   */
+  @Test
+  public void testReadFromOffset() throws IOException {
+    LOG.info("Start testReadFromOffset");
+    long offset = DEFAULT_BLOCK_SIZE + 10;
+    HdfsLocalBlockInputStream instance = new HdfsLocalBlockInputStream(DFS,
+            new Path(DEFAULT_FILE_PATH), offset);
+    try {
+      byte[] rest = readAll(instance);
+      assertEquals(DATA.length - offset, rest.length);
+      assertEquals(DATA[(int) offset], rest[0]);
+      assertEquals(DATA[DATA.length - 1], rest[rest.length - 1]);
+      assertEquals(DATA.length - offset, instance.getLocalBytes());
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test that a corrupt local replica is not read, of class
+   * HdfsLocalBlockInputStream.
+   */
+  @Test
+  public void testCorruptReplica() throws IOException {
+    LOG.info("Start testCorruptReplica");
+    Path path = new Path("/local/corrupt.bin");
+    FSDataOutputStream out = DFS.create(path);
+    out.write(DATA);
+    out.close();
+    ExtendedBlock block = DFSTestUtil.getFirstBlock(DFS, path);
+    RandomAccessFile blockFile = new RandomAccessFile(CLUSTER.getBlockFile(0, block), "rw");
+    try {
+      blockFile.seek(100);
+      blockFile.write(~DATA[100]);
+    } finally {
+      blockFile.close();
+    }
+    HdfsLocalBlockInputStream instance = new HdfsLocalBlockInputStream(DFS, path, 0);
+    try {
+      // the only replica is corrupt, HDFS fails the read too
+      readAll(instance);
+      fail("corrupt data was read");
+    } catch (IOException e) {
+      assertEquals(0, instance.getLocalBytes());
+    } finally {
+      instance.close();
+    }
+  }
+}
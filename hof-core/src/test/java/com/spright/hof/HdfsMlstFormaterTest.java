@@ -0,0 +1,117 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsMlstFormaterTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsMlstFormaterTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static User USER;
+  private static HdfsUser HDFSUSER;
+  private static final String DEFAULT_NAME = "user";
+  private static final List<Authority> DEFAULT_AUTHORITIES = null;
+  private static final String DEFAULT_HOME = "/home";
+
+  private static final String DEFAULT_DIR_PATH = "/mlst";
+  private static final String DEFAULT_FILE_PATH = "/mlst/file.txt";
+  private static final FsPermission DEFAULT_PERMISSION = new FsPermission((short) 0644);
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsMlstFormater.java");
+    USER = Mockito.mock(User.class);
+    Mockito.when(USER.getName()).thenReturn(DEFAULT_NAME);
+    Mockito.when(USER.getAuthorities()).thenReturn(DEFAULT_AUTHORITIES);
+    Mockito.when(USER.getHomeDirectory()).thenReturn(DEFAULT_HOME);
+    HDFSUSER = new HdfsUser(USER);
+
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+    DFS.create(new Path(DEFAULT_FILE_PATH)).close();
+    DFS.setPermission(new Path(DEFAULT_FILE_PATH), DEFAULT_PERMISSION);
+    HdfsOverFtpSystem.setDfs(DFS);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+    HdfsOverFtpSystem.setDfs(null);
+  }
+
+  /**
+   * Test of format method for an HDFS file, of class HdfsMlstFormater.
+   */
+  @Test
+  public void testFormatFile() throws IOException {
+    LOG.info("Start testFormatFile");
+    FileStatus fs = DFS.getFileStatus(new Path(DEFAULT_FILE_PATH));
+    HdfsFileObject file = new HdfsFileObject(fs, HDFSUSER);
+
+    String result = new HdfsMlstFormater(null, true).format(file);
+    assertTrue(result.startsWith("Size=0;Modify="));
+    assertTrue(result.contains(";Type=file;Perm=r;"));
+    assertTrue(result.contains(";UNIX.owner=" + fs.getOwner() + ";"));
+    assertTrue(result.contains(";UNIX.mode=0644;"));
+    assertTrue(result.contains(";HDFS.replication=" + fs.getReplication() + ";"));
+    assertTrue(result.contains(";HDFS.blocksize=" + fs.getBlockSize() + ";"));
+    assertTrue(result.endsWith("; file.txt\r\n"));
+
+    String withoutHdfs = new HdfsMlstFormater(new String[]{"Type"}, false).format(file);
+    assertTrue(withoutHdfs.startsWith("Type=file;UNIX.owner="));
+    assertFalse(withoutHdfs.contains("HDFS."));
+  }
+
+  /**
+   * Test of format method for an HDFS directory, of class HdfsMlstFormater.
+   */
+  @Test
+  public void testFormatDirectory() throws IOException {
+    LOG.info("Start testFormatDirectory");
+    HdfsFileObject dir = new HdfsFileObject(DEFAULT_DIR_PATH, HDFSUSER);
+    String result = new HdfsMlstFormater(null, true).format(dir);
+    assertTrue(result.contains(";Type=dir;Perm=el;"));
+    assertFalse(result.contains("HDFS.replication="));
+    assertTrue(result.endsWith(" mlst\r\n"));
+  }
+
+  /**
+   * Test of format method for another file, of class HdfsMlstFormater.
+   */
+  @Test
+  public void testFormatOtherFile() {
+    LOG.info("Start testFormatOtherFile");
+    FtpFile file = Mockito.mock(FtpFile.class);
+    Mockito.when(file.getName()).thenReturn("other");
+    Mockito.when(file.getSize()).thenReturn(5L);
+    Mockito.when(file.isReadable()).thenReturn(true);
+    String result = new HdfsMlstFormater(new String[]{"Size", "Perm"}, true).format(file);
+    assertEquals("Size=5;Perm=r; other\r\n", result);
+  }
+}
@@ -0,0 +1,106 @@
+package com.spright.hof;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsMountTableTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsMountTableTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static MiniDFSCluster MOUNTED_CLUSTER;
+
+  private static final String DEFAULT_URI = "hdfs://default";
+  private static final String TENANT_URI = "hdfs://tenant";
+  private static final String ARCHIVE_URI = "hdfs://archive";
+  private static final String MOUNTED_FILE_PATH = "/tenant/file.txt";
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsMountTable.java");
+    LOG.info("Create MiniDFSClusters.");
+    Configuration conf = new HdfsConfiguration();
+    conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR,
+            new File(MiniDFSCluster.getBaseDirectory(), "default").getAbsolutePath());
+    CLUSTER = new MiniDFSCluster.Builder(conf).build();
+    Configuration mountedConf = new HdfsConfiguration();
+    mountedConf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR,
+            new File(MiniDFSCluster.getBaseDirectory(), "mounted").getAbsolutePath());
+    MOUNTED_CLUSTER = new MiniDFSCluster.Builder(mountedConf).build();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    HdfsOverFtpSystem.setMountTable(null);
+    HdfsOverFtpSystem.setDfs(null);
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSClusters");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+    if (MOUNTED_CLUSTER != null) {
+      MOUNTED_CLUSTER.shutdown();
+      MOUNTED_CLUSTER = null;
+    }
+  }
+
+  /**
+   * Test of resolve method, of class HdfsMountTable.
+   */
+  @Test
+  public void testResolve() {
+    LOG.info("Start testResolve");
+    HdfsMountTable instance = new HdfsMountTable();
+    assertTrue(instance.isEmpty());
+    assertNull(instance.resolve("/tenant/file.txt"));
+
+    instance.addMount("/tenant/", TENANT_URI);
+    instance.addMount("/tenant/archive", ARCHIVE_URI);
+    assertFalse(instance.isEmpty());
+    assertEquals(TENANT_URI, instance.resolve("/tenant"));
+    assertEquals(TENANT_URI, instance.resolve("/tenant/file.txt"));
+    assertEquals(ARCHIVE_URI, instance.resolve("/tenant/archive/2016/file.txt"));
+    assertNull(instance.resolve("/tenants/file.txt"));
+    assertNull(instance.resolve("/"));
+
+    instance.addMount("/", DEFAULT_URI);
+    assertEquals(DEFAULT_URI, instance.resolve("/tenants/file.txt"));
+  }
+
+  /**
+   * Test that paths are routed to the mounted cluster, of class HdfsMountTable.
+   */
+  @Test
+  public void testRouting() throws IOException {
+    LOG.info("Start testRouting");
+    HdfsOverFtpSystem.setDfs(null);
+    HdfsOverFtpSystem.setHDFS_URI(CLUSTER.getURI().toString());
+    HdfsMountTable instance = new HdfsMountTable();
+    instance.addMount("/tenant", MOUNTED_CLUSTER.getURI().toString());
+    HdfsOverFtpSystem.setMountTable(instance);
+
+    Path mounted = new Path(MOUNTED_FILE_PATH);
+    DistributedFileSystem dfs = HdfsOverFtpSystem.leaseDfs(mounted, null).getDfs();
+    assertEquals(MOUNTED_CLUSTER.getURI(), dfs.getUri());
+    dfs.create(mounted).close();
+
+    assertTrue(MOUNTED_CLUSTER.getFileSystem().exists(mounted));
+    assertFalse(CLUSTER.getFileSystem().exists(mounted));
+    assertNotNull(HdfsOverFtpSystem.findFileStatus(mounted, null));
+    assertEquals(CLUSTER.getURI(), HdfsOverFtpSystem.leaseDfs(new Path("/other"), null)
+            .getDfs().getUri());
+
+    assertTrue(HdfsOverFtpSystem.isSameCluster(mounted, new Path("/tenant/moved.txt")));
+    assertFalse(HdfsOverFtpSystem.isSameCluster(mounted, new Path("/moved.txt")));
+  }
+}
@@ -0,0 +1,111 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsOpenFileCacheTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsOpenFileCacheTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static final String DEFAULT_DIR_PATH = "/shared";
+  private static final String DEFAULT_FILE_PATH = "/shared/file.bin";
+  private static final byte[] DATA = new byte[10000];
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsOpenFileCache.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) i;
+    }
+    FSDataOutputStream out = DFS.create(new Path(DEFAULT_FILE_PATH));
+    out.write(DATA);
+    out.close();
+    HdfsOverFtpSystem.setDfs(DFS);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+    HdfsOverFtpSystem.setDfs(null);
+  }
+
+  /**
+   * Test of open method, of class HdfsOpenFileCache.
+   */
+  @Test
+  public void testOpen() throws IOException {
+    LOG.info("Start testOpen");
+    HdfsOpenFileCache instance = new HdfsOpenFileCache();
+    Path path = new Path(DEFAULT_FILE_PATH);
+    HdfsOpenFileCache.Handle first = instance.open(path, null);
+    HdfsOpenFileCache.Handle second = instance.open(path, null);
+    assertSame(first.getStream(), second.getStream());
+    assertEquals(1, instance.getOpens());
+    assertEquals(1, instance.getHits());
+
+    // segments are read with positional reads of the shared stream
+    HdfsPositionalInputStream head = new HdfsPositionalInputStream(first.getStream(), 0, 1000,
+            first);
+    HdfsPositionalInputStream tail = new HdfsPositionalInputStream(second.getStream(), 5000,
+            1000, second);
+    assertEquals(DATA[5000] & 0xff, tail.read());
+    assertEquals(DATA[0] & 0xff, head.read());
+
+    // the file stays open until the last segment is done
+    head.close();
+    head.close();
+    assertEquals(1, instance.size());
+    assertEquals(DATA[5001] & 0xff, tail.read());
+    tail.close();
+    assertEquals(0, instance.size());
+    HdfsOpenFileCache.Handle third = instance.open(path, null);
+    assertEquals(2, instance.getOpens());
+    third.close();
+  }
+
+  /**
+   * Test of invalidate and invalidateTree methods, of class HdfsOpenFileCache.
+   */
+  @Test
+  public void testInvalidate() throws IOException {
+    LOG.info("Start testInvalidate");
+    HdfsOpenFileCache instance = new HdfsOpenFileCache();
+    Path path = new Path(DEFAULT_FILE_PATH);
+    HdfsOpenFileCache.Handle first = instance.open(path, null);
+    instance.invalidate(path);
+    assertEquals(0, instance.size());
+
+    // a changed file is opened again, the old stream stays readable
+    HdfsOpenFileCache.Handle second = instance.open(path, null);
+    assertNotSame(first.getStream(), second.getStream());
+    byte[] b = new byte[1];
+    assertEquals(1, first.getStream().read(0, b, 0, 1));
+
+    instance.invalidateTree(new Path(DEFAULT_DIR_PATH));
+    assertEquals(0, instance.size());
+    first.close();
+    second.close();
+  }
+}
@@ -2,12 +2,18 @@ package com.spright.hof;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.namenode.ha.HATestUtil;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -87,4 +93,70 @@ public class HdfsOverFtpSystemTest {
     HdfsOverFtpSystem.setHDFS_URI(sourceURI);
     assertEquals("URI", resultURI);
   }
+
+  /**
+   * Test of setShortCircuit method, of class HdfsOverFtpSystem.
+   */
+  @Test
+  public void testSetShortCircuit() {
+    LOG.info("Start testSetShortCircuit");
+    HdfsOverFtpSystem.setShortCircuit(true, "/var/lib/hadoop-hdfs/dn_socket", 1048576);
+    Configuration conf = HdfsOverFtpSystem.createConf();
+    HdfsOverFtpSystem.setShortCircuit(false, null, 0);
+
+    assertTrue(conf.getBoolean(DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_KEY, false));
+    assertEquals("/var/lib/hadoop-hdfs/dn_socket",
+            conf.get(DFSConfigKeys.DFS_DOMAIN_SOCKET_PATH_KEY));
+    assertEquals(1048576, conf.getInt(DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_BUFFER_SIZE_KEY, 0));
+    assertFalse(HdfsOverFtpSystem.createConf()
+            .getBoolean(DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_KEY, false));
+  }
+
+  /**
+   * Test that metadata reads are served by the read NameNode, of class
+   * HdfsOverFtpSystem.
+   */
+  @Test
+  public void testStandbyReads() throws Exception {
+    LOG.info("Start testStandbyReads");
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean("dfs.ha.allow.stale.reads", true);
+    // the standby only catches up when it is told to
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 3600);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+            .nnTopology(MiniDFSNNTopology.simpleHATopology()).numDataNodes(0).build();
+    String uri = HdfsOverFtpSystem.HDFS_URI;
+    try {
+      cluster.waitActive();
+      cluster.transitionToActive(0);
+      Map<String, String> namenodes = new LinkedHashMap<String, String>();
+      namenodes.put("nn1", "localhost:" + cluster.getNameNode(0).getNameNodeAddress().getPort());
+      namenodes.put("nn2", "localhost:" + cluster.getNameNode(1).getNameNodeAddress().getPort());
+      HdfsOverFtpSystem.setDfs(null);
+      HdfsOverFtpSystem.setHaNameservice("hofns", namenodes);
+      HdfsOverFtpSystem.setStandbyReads(Collections.singletonList("nn2"), 60000);
+      HdfsOverFtpSystem.setHDFS_URI("hdfs://hofns");
+
+      Path path = new Path("/standby.txt");
+      cluster.getFileSystem(0).create(path).close();
+      // the listing comes from the standby, which hasn't seen the file yet
+      assertEquals(0, HdfsOverFtpSystem.listStatus(new Path("/"), null).length);
+      // a path the standby doesn't know is looked up on the active
+      assertNotNull(HdfsOverFtpSystem.findFileStatus(path, null));
+      HATestUtil.waitForStandbyToCatchUp(cluster.getNameNode(0), cluster.getNameNode(1));
+      assertEquals(1, HdfsOverFtpSystem.listStatus(new Path("/"), null).length);
+
+      // reads go to the active NameNode when the standby is down
+      Path other = new Path("/active.txt");
+      cluster.getFileSystem(0).create(other).close();
+      cluster.shutdownNameNode(1);
+      assertNotNull(HdfsOverFtpSystem.findFileStatus(other, null));
+    } finally {
+      HdfsOverFtpSystem.setStandbyReads(null, 0);
+      HdfsOverFtpSystem.setHaNameservice(null, null);
+      HdfsOverFtpSystem.setDfs(null);
+      HdfsOverFtpSystem.setHDFS_URI(uri);
+      cluster.shutdown();
+    }
+  }
 }
@@ -0,0 +1,173 @@
+package com.spright.hof;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsPositionalInputStreamTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsPositionalInputStreamTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static final String DEFAULT_FILE_PATH = "/positional/file.bin";
+  private static final int DEFAULT_CHUNK_SIZE = 1000;
+  private static final byte[] DATA = new byte[4096];
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsPositionalInputStream.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) i;
+    }
+    FSDataOutputStream out = DFS.create(new Path(DEFAULT_FILE_PATH));
+    out.write(DATA);
+    out.close();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[300];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Test of read method, of class HdfsPositionalInputStream.
+   */
+  @Test
+  public void testRead() throws IOException {
+    LOG.info("Start testRead");
+    InputStream instance = new HdfsPositionalInputStream(
+            DFS.open(new Path(DEFAULT_FILE_PATH)), 0, DEFAULT_CHUNK_SIZE);
+    try {
+      assertArrayEquals(DATA, readAll(instance));
+      assertEquals(-1, instance.read());
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test of reading from an offset, of class HdfsPositionalInputStream.
+   */
+  @Test
+  public void testReadFromOffset() throws IOException {
+    LOG.info("Start testReadFromOffset");
+    InputStream instance = new HdfsPositionalInputStream(
+            DFS.open(new Path(DEFAULT_FILE_PATH)), 1500, DEFAULT_CHUNK_SIZE);
+    try {
+      assertEquals(DATA[1500] & 0xff, instance.read());
+      assertEquals(1000, instance.skip(1000));
+      byte[] rest = readAll(instance);
+      assertEquals(DATA.length - 2501, rest.length);
+      assertEquals(DATA[2501], rest[0]);
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test of skipping past the end of the file, of class
+   * HdfsPositionalInputStream.
+   */
+  @Test
+  public void testSkipPastEnd() throws IOException {
+    LOG.info("Start testSkipPastEnd");
+    InputStream instance = new HdfsPositionalInputStream(
+            DFS.open(new Path(DEFAULT_FILE_PATH)), 0, DEFAULT_CHUNK_SIZE);
+    try {
+      assertEquals(DATA[0] & 0xff, instance.read());
+      // only the bytes left in the file are skipped
+      assertEquals(DATA.length - 1, instance.skip(DATA.length * 2));
+      assertEquals(0, instance.skip(10));
+      assertEquals(-1, instance.read());
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test that the chunk is borrowed from the pool only for small reads, of
+   * class HdfsPositionalInputStream.
+   */
+  @Test
+  public void testChunkPool() throws IOException {
+    LOG.info("Start testChunkPool");
+    HdfsBufferPool pool = new HdfsBufferPool(DEFAULT_CHUNK_SIZE, 1, false);
+    FSDataInputStream in = DFS.open(new Path(DEFAULT_FILE_PATH));
+    HdfsPositionalInputStream instance = new HdfsPositionalInputStream(in, 0, pool, in);
+    try {
+      // a read of a whole chunk goes straight to the buffer
+      ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
+      assertEquals(DEFAULT_CHUNK_SIZE, instance.read(buffer));
+      assertEquals(0, pool.getAllocated());
+      assertEquals(DATA[DEFAULT_CHUNK_SIZE - 1], buffer.get(DEFAULT_CHUNK_SIZE - 1));
+
+      byte[] rest = readAll(instance);
+      assertEquals(DATA.length - DEFAULT_CHUNK_SIZE, rest.length);
+      assertEquals(DATA[DEFAULT_CHUNK_SIZE], rest[0]);
+      assertEquals(1, pool.getInUse());
+    } finally {
+      instance.close();
+    }
+    assertEquals(0, pool.getInUse());
+  }
+
+  /**
+   * Test that a stream read ahead in another thread gives its chunk back once
+   * the read-ahead has stopped, of class HdfsPositionalInputStream.
+   */
+  @Test
+  public void testCloseReadAhead() throws IOException {
+    LOG.info("Start testCloseReadAhead");
+    HdfsBufferPool chunks = new HdfsBufferPool(DEFAULT_CHUNK_SIZE, 1, false);
+    HdfsBufferPool buffers = new HdfsBufferPool(DEFAULT_CHUNK_SIZE / 2, 2);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      FSDataInputStream in = DFS.open(new Path(DEFAULT_FILE_PATH));
+      InputStream instance = new HdfsReadAheadInputStream(
+              new HdfsPositionalInputStream(in, 0, chunks, in), executor, buffers, 2);
+      assertEquals(DATA[0] & 0xff, instance.read());
+      instance.close();
+      assertEquals(0, chunks.getInUse());
+      assertEquals(1, chunks.getAllocated());
+      assertEquals(0, buffers.getInUse());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
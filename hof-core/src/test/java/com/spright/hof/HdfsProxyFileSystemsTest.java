@@ -0,0 +1,133 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsProxyFileSystemsTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsProxyFileSystemsTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+
+  private static final String DEFAULT_DIR_PATH = "/proxy";
+  private static final String DEFAULT_USER = "ftpuser";
+  private static final long DEFAULT_IDLE = 60000;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsProxyFileSystems.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    String superuser = UserGroupInformation.getCurrentUser().getShortUserName();
+    CONF.set("hadoop.proxyuser." + superuser + ".hosts", "*");
+    CONF.set("hadoop.proxyuser." + superuser + ".groups", "*");
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+    DFS.mkdirs(new Path(DEFAULT_DIR_PATH));
+    DFS.setPermission(new Path(DEFAULT_DIR_PATH), new FsPermission((short) 0755));
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+  }
+
+  /**
+   * Test of the filesystem of a proxy user, of class HdfsProxyFileSystems.
+   */
+  @Test
+  public void testGet() throws IOException {
+    LOG.info("Start testGet");
+    HdfsProxyFileSystems instance = new HdfsProxyFileSystems(DFS.getUri(), CONF, DEFAULT_IDLE);
+    try {
+      HdfsProxyFileSystems.Lease lease = instance.lease(DEFAULT_USER);
+      DistributedFileSystem dfs = lease.getDfs();
+      HdfsProxyFileSystems.Lease again = instance.lease(DEFAULT_USER);
+      assertSame(dfs, again.getDfs());
+      again.release();
+
+      // the NameNode checks the permissions of the proxy user
+      try {
+        dfs.mkdirs(new Path(DEFAULT_DIR_PATH + "/denied"));
+        fail("proxy user should not write to a directory of the superuser");
+      } catch (AccessControlException e) {
+        // expected
+      }
+
+      // and sets it as the owner
+      Path home = new Path(DEFAULT_DIR_PATH + "/home");
+      DFS.mkdirs(home);
+      DFS.setOwner(home, DEFAULT_USER, DEFAULT_USER);
+      Path created = new Path(home, "created");
+      dfs.mkdirs(created);
+      assertEquals(DEFAULT_USER, DFS.getFileStatus(created).getOwner());
+      lease.release();
+    } finally {
+      instance.closeAll();
+    }
+  }
+
+  /**
+   * Test of lease method, of class HdfsProxyFileSystems.
+   */
+  @Test
+  public void testLease() throws IOException {
+    LOG.info("Start testLease");
+    HdfsProxyFileSystems instance = new HdfsProxyFileSystems(DFS.getUri(), CONF, DEFAULT_IDLE);
+    HdfsProxyFileSystems.Lease lease = instance.lease(DEFAULT_USER);
+
+    // the filesystem stays open while the lease is held
+    instance.closeAll();
+    assertTrue(lease.getDfs().exists(new Path(DEFAULT_DIR_PATH)));
+
+    lease.release();
+    try {
+      lease.getDfs().exists(new Path(DEFAULT_DIR_PATH));
+      fail("filesystem should be closed after the last lease is released");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that an evicted lease is not handed out again, of class
+   * HdfsProxyFileSystems.
+   */
+  @Test
+  public void testLeaseAfterEviction() throws IOException {
+    LOG.info("Start testLeaseAfterEviction");
+    HdfsProxyFileSystems instance = new HdfsProxyFileSystems(DFS.getUri(), CONF, DEFAULT_IDLE);
+    HdfsProxyFileSystems.Lease lease = instance.lease(DEFAULT_USER);
+    lease.release();
+    instance.closeAll();
+    // the filesystem of an evicted lease is closed, it can't be held again
+    assertFalse(lease.acquire());
+
+    HdfsProxyFileSystems.Lease fresh = instance.lease(DEFAULT_USER);
+    try {
+      assertNotSame(lease, fresh);
+      assertTrue(fresh.getDfs().exists(new Path(DEFAULT_DIR_PATH)));
+    } finally {
+      fresh.release();
+      instance.closeAll();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package com.spright.hof;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsReadAheadInputStreamTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsReadAheadInputStreamTest.class);
+  private static ExecutorService EXECUTOR;
+
+  private static final int DEFAULT_BUFFERS = 3;
+  private static final int DEFAULT_BUFFER_SIZE = 1000;
+  private static final byte[] DATA = new byte[10500];
+
+  @BeforeClass
+  public static void setUpClass() {
+    LOG.info("Start test HdfsReadAheadInputStream.java");
+    EXECUTOR = Executors.newCachedThreadPool();
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) i;
+    }
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    EXECUTOR.shutdownNow();
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[333];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Test of read method, of class HdfsReadAheadInputStream.
+   */
+  @Test
+  public void testRead() throws IOException {
+    LOG.info("Start testRead");
+    InputStream instance = new HdfsReadAheadInputStream(new ByteArrayInputStream(DATA),
+            EXECUTOR, new HdfsBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS), DEFAULT_BUFFERS);
+    try {
+      assertEquals(DATA[0] & 0xff, instance.read());
+      byte[] rest = readAll(instance);
+      assertEquals(DATA.length - 1, rest.length);
+      assertEquals(DATA[DATA.length - 1], rest[rest.length - 1]);
+      assertEquals(-1, instance.read());
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test that errors of the source reach the reader, of class
+   * HdfsReadAheadInputStream.
+   */
+  @Test
+  public void testReadError() throws IOException {
+    LOG.info("Start testReadError");
+    InputStream failing = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("DataNode is gone");
+      }
+    };
+    InputStream instance = new HdfsReadAheadInputStream(failing, EXECUTOR,
+            new HdfsBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS), DEFAULT_BUFFERS);
+    try {
+      instance.read();
+      fail("error of the source should be thrown");
+    } catch (IOException e) {
+      assertEquals("DataNode is gone", e.getMessage());
+    } finally {
+      instance.close();
+    }
+  }
+
+  /**
+   * Test of close method before the end of the stream, of class
+   * HdfsReadAheadInputStream.
+   */
+  @Test
+  public void testClose() throws IOException {
+    LOG.info("Start testClose");
+    HdfsBufferPool pool = new HdfsBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+    InputStream instance = new HdfsReadAheadInputStream(new ByteArrayInputStream(DATA),
+            EXECUTOR, pool, DEFAULT_BUFFERS);
+    assertEquals(DEFAULT_BUFFERS, pool.getInUse());
+    instance.read();
+    instance.close();
+    // the buffers are back in the pool
+    assertEquals(0, pool.getInUse());
+    assertEquals(DEFAULT_BUFFERS, pool.getAllocated());
+    try {
+      instance.read();
+      fail("closed stream should not be read");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that closing does not interrupt a read of the source, of class
+   * HdfsReadAheadInputStream.
+   */
+  @Test
+  public void testCloseWithoutInterrupt() throws IOException {
+    LOG.info("Start testCloseWithoutInterrupt");
+    final AtomicBoolean interrupted = new AtomicBoolean();
+    InputStream slow = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          interrupted.set(true);
+        }
+        return 0;
+      }
+    };
+    HdfsBufferPool pool = new HdfsBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+    InputStream instance = new HdfsReadAheadInputStream(slow, EXECUTOR, pool, DEFAULT_BUFFERS);
+    instance.close();
+    assertFalse(interrupted.get());
+    // the producer stopped, so the buffers are back in the pool
+    assertEquals(0, pool.getInUse());
+    assertEquals(DEFAULT_BUFFERS, pool.getAllocated());
+  }
+}
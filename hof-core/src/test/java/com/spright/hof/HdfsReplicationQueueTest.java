@@ -0,0 +1,223 @@
+package com.spright.hof;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsReplicationQueueTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsReplicationQueueTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+  private static HdfsUser HDFSUSER;
+
+  private static final String DEFAULT_DIR_PATH = "/landing";
+  private static final short DEFAULT_REPLICATION = 2;
+  private static final long DEFAULT_TIMEOUT = 30000;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsReplicationQueue.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CONF.setInt("dfs.replication", DEFAULT_REPLICATION);
+    CLUSTER = new MiniDFSCluster.Builder(CONF).numDataNodes(2).build();
+    DFS = CLUSTER.getFileSystem();
+    DFS.mkdirs(new Path(DEFAULT_DIR_PATH));
+    HdfsOverFtpSystem.setDfs(DFS);
+    BaseUser user = new BaseUser();
+    user.setName("ftpuser");
+    HDFSUSER = new HdfsUser(user);
+    ArrayList<String> groups = new ArrayList<String>();
+    groups.add("ftpgroup");
+    HDFSUSER.setGroups(groups);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+    HdfsOverFtpSystem.setDfs(null);
+  }
+
+  private static void waitForBacklog(HdfsReplicationQueue queue) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + DEFAULT_TIMEOUT;
+    while (queue.getBacklog() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(0, queue.getBacklog());
+  }
+
+  /**
+   * Test of uploads written with the landing replication, of class
+   * HdfsReplicationQueue.
+   */
+  @Test
+  public void testLanding() throws Exception {
+    LOG.info("Start testLanding");
+    File journal = new File(Files.createTempDir(), "replication.journal");
+    HdfsOverFtpSystem.setReplicationQueue(journal, (short) 1, 0);
+    try {
+      HdfsReplicationQueue instance = HdfsOverFtpSystem.getReplicationQueue();
+      Path path = new Path(DEFAULT_DIR_PATH + "/landed.txt");
+      FSDataOutputStream out = new HdfsUploadPolicy().create(DFS, path, HDFSUSER, -1);
+      out.write(1);
+      out.hflush();
+      assertEquals(1, DFS.getFileStatus(path).getReplication());
+      out.close();
+      waitForBacklog(instance);
+      assertEquals(DEFAULT_REPLICATION, DFS.getFileStatus(path).getReplication());
+      assertEquals(1, instance.getDone());
+      // the finished file is gone from the journal
+      assertEquals(0, journal.length());
+    } finally {
+      HdfsOverFtpSystem.setReplicationQueue(null, (short) 0, 0);
+    }
+  }
+
+  /**
+   * Test of resuming the files left in the journal, of class
+   * HdfsReplicationQueue.
+   */
+  @Test
+  public void testRecover() throws Exception {
+    LOG.info("Start testRecover");
+    Path path = new Path(DEFAULT_DIR_PATH + "/recovered.txt");
+    FSDataOutputStream out = DFS.create(path, (short) 1);
+    out.write(1);
+    out.close();
+    File journal = new File(Files.createTempDir(), "replication.journal");
+    Files.write("+\t2\tftpuser\tftpgroup\t" + path + "\n"
+            + "+\t2\tftpuser\tftpgroup\t" + DEFAULT_DIR_PATH + "/done.txt\n"
+            + "-\t" + DEFAULT_DIR_PATH + "/done.txt\n"
+            + "+\t2\tftpuser\tftpgroup\t" + DEFAULT_DIR_PATH + "/gone.txt\n"
+            + "+\t2\tftp", journal, Charsets.UTF_8);
+
+    HdfsReplicationQueue instance = new HdfsReplicationQueue(journal, (short) 1, 10);
+    try {
+      waitForBacklog(instance);
+      assertEquals(DEFAULT_REPLICATION, DFS.getFileStatus(path).getReplication());
+      assertEquals(1, instance.getDone());
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  /**
+   * Test of rename method, of class HdfsReplicationQueue.
+   */
+  @Test
+  public void testRename() throws Exception {
+    LOG.info("Start testRename");
+    Path tmp = new Path(DEFAULT_DIR_PATH + "/tmp");
+    Path file = new Path(tmp, "renamed.txt");
+    FSDataOutputStream out = DFS.create(file, (short) 1);
+    out.write(1);
+    out.close();
+    Path dir = new Path(DEFAULT_DIR_PATH + "/done");
+    DFS.mkdirs(dir);
+    File journal = new File(Files.createTempDir(), "replication.journal");
+    // one file per second, the first one keeps the worker away from the
+    // renamed file for a second
+    HdfsReplicationQueue instance = new HdfsReplicationQueue(journal, (short) 1, 1);
+    try {
+      instance.add(new Path(DEFAULT_DIR_PATH + "/missing.txt"), HDFSUSER, DEFAULT_REPLICATION);
+      instance.add(file, HDFSUSER, DEFAULT_REPLICATION);
+      // moved into the existing directory
+      assertTrue(instance.rename(DFS, tmp, dir));
+      waitForBacklog(instance);
+      assertEquals(DEFAULT_REPLICATION,
+              DFS.getFileStatus(new Path(dir, "tmp/renamed.txt")).getReplication());
+      assertEquals(1, instance.getDone());
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  /**
+   * Test that the journal is compacted under a steady backlog, of class
+   * HdfsReplicationQueue.
+   */
+  @Test
+  public void testCompact() throws Exception {
+    LOG.info("Start testCompact");
+    File journal = new File(Files.createTempDir(), "replication.journal");
+    // one file per second keeps the backlog from draining
+    HdfsReplicationQueue instance = new HdfsReplicationQueue(journal, (short) 1, 1);
+    try {
+      // each file queued again is appended to the journal once more
+      for (int i = 0; i < 4; i++) {
+        for (int j = 0; j < 1000; j++) {
+          instance.add(new Path(DEFAULT_DIR_PATH + "/queued" + j + ".txt"), HDFSUSER,
+                  DEFAULT_REPLICATION);
+        }
+      }
+      long deadline = System.currentTimeMillis() + DEFAULT_TIMEOUT;
+      while (instance.getJournalLines() >= 2000
+              && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+      assertTrue(instance.getBacklog() > 0);
+      assertTrue(instance.getJournalLines() < 2000);
+      assertTrue(Files.readLines(journal, Charsets.UTF_8).size() < 2000);
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  /**
+   * Test of a journal which can't be written, of class HdfsReplicationQueue.
+   */
+  @Test
+  public void testJournalError() throws Exception {
+    LOG.info("Start testJournalError");
+    File dir = Files.createTempDir();
+    File journal = new File(dir, "replication.journal");
+    HdfsReplicationQueue instance = new HdfsReplicationQueue(journal, (short) 1, 0);
+    try {
+      assertTrue(instance.isLanding(DEFAULT_REPLICATION));
+      // the journal can't be rewritten once the queue is drained
+      assertTrue(journal.delete());
+      assertTrue(dir.delete());
+      instance.add(new Path(DEFAULT_DIR_PATH + "/missing.txt"), HDFSUSER, DEFAULT_REPLICATION);
+      long deadline = System.currentTimeMillis() + DEFAULT_TIMEOUT;
+      while (instance.getJournalErrors() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+      assertTrue(instance.getJournalErrors() > 0);
+      assertFalse(instance.isLanding(DEFAULT_REPLICATION));
+      assertFalse(instance.isStalled());
+
+      // landing again once the journal is written
+      assertTrue(dir.mkdirs());
+      instance.add(new Path(DEFAULT_DIR_PATH + "/missing.txt"), HDFSUSER, DEFAULT_REPLICATION);
+      deadline = System.currentTimeMillis() + DEFAULT_TIMEOUT;
+      while (!instance.isLanding(DEFAULT_REPLICATION) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+      assertTrue(instance.isLanding(DEFAULT_REPLICATION));
+      assertTrue(journal.exists());
+    } finally {
+      instance.shutdown();
+    }
+  }
+}
@@ -0,0 +1,249 @@
+package com.spright.hof;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsSegmentedUploadsTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsSegmentedUploadsTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+  private static HdfsUser HDFSUSER;
+
+  private static final String DEFAULT_DIR_PATH = "/segments";
+  private static final int DEFAULT_BLOCK_SIZE = 4096;
+  private static final long DEFAULT_TIMEOUT = 60000;
+  private static final byte[] DATA = new byte[DEFAULT_BLOCK_SIZE * 3 + 100];
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsSegmentedUploads.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CONF.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    CONF.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, DEFAULT_BLOCK_SIZE);
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+    DFS.mkdirs(new Path(DEFAULT_DIR_PATH));
+    HdfsOverFtpSystem.setDfs(DFS);
+    BaseUser user = new BaseUser();
+    user.setName("ftpuser");
+    HDFSUSER = new HdfsUser(user);
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) i;
+    }
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+    HdfsOverFtpSystem.setDfs(null);
+  }
+
+  private static void writePart(HdfsSegmentedUploads.Upload upload, long offset, int length)
+          throws IOException {
+    OutputStream out = upload.createPart(DFS, offset);
+    try {
+      out.write(DATA, (int) offset, length);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static byte[] readAll(Path path) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    InputStream in = DFS.open(path);
+    try {
+      byte[] buffer = new byte[1000];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        out.write(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Test of an upload in parts sent out of order, of class
+   * HdfsSegmentedUploads.
+   */
+  @Test
+  public void testUpload() throws IOException {
+    LOG.info("Start testUpload");
+    HdfsSegmentedUploads instance = new HdfsSegmentedUploads(DEFAULT_TIMEOUT);
+    Path path = new Path(DEFAULT_DIR_PATH + "/file.bin");
+    HdfsSegmentedUploads.Upload upload = instance.declare(path, HDFSUSER, DATA.length, 3);
+
+    // parts are rounded up to whole blocks
+    long partSize = upload.getPartSize();
+    assertEquals(0, partSize % DEFAULT_BLOCK_SIZE);
+    assertEquals((DATA.length + partSize - 1) / partSize, upload.getParts());
+    assertSame(upload, instance.get(path));
+
+    int last = upload.getParts() - 1;
+    writePart(upload, last * partSize, (int) (DATA.length - last * partSize));
+    assertFalse(DFS.exists(path));
+    for (int i = 0; i < last; i++) {
+      writePart(upload, i * partSize, (int) partSize);
+    }
+
+    assertArrayEquals(DATA, readAll(path));
+    assertNull(instance.get(path));
+    // the part files are gone into the file
+    assertEquals(0, DFS.globStatus(new Path(DEFAULT_DIR_PATH + "/.file.bin.part-*")).length);
+  }
+
+  /**
+   * Test of parts at a wrong offset or with a wrong length, of class
+   * HdfsSegmentedUploads.
+   */
+  @Test
+  public void testBadPart() throws IOException {
+    LOG.info("Start testBadPart");
+    HdfsSegmentedUploads instance = new HdfsSegmentedUploads(DEFAULT_TIMEOUT);
+    Path path = new Path(DEFAULT_DIR_PATH + "/bad.bin");
+    HdfsSegmentedUploads.Upload upload = instance.declare(path, HDFSUSER, DATA.length, 2);
+    try {
+      upload.createPart(DFS, 1);
+      fail("an offset inside a part should be refused");
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      writePart(upload, 0, 10);
+      fail("a short part should be refused");
+    } catch (IOException e) {
+      // expected
+    }
+    assertSame(upload, instance.get(path));
+    assertFalse(DFS.exists(path));
+  }
+
+  /**
+   * Test that an upload whose parts can't be concatenated can be retried, of
+   * class HdfsSegmentedUploads.
+   */
+  @Test
+  public void testConcatFailure() throws IOException {
+    LOG.info("Start testConcatFailure");
+    HdfsSegmentedUploads instance = new HdfsSegmentedUploads(DEFAULT_TIMEOUT);
+    Path path = new Path(DEFAULT_DIR_PATH + "/concat.bin");
+    HdfsSegmentedUploads.Upload upload = instance.declare(path, HDFSUSER, DATA.length, 3);
+    long partSize = upload.getPartSize();
+    int last = upload.getParts() - 1;
+    for (int i = 0; i < last; i++) {
+      writePart(upload, i * partSize, (int) partSize);
+    }
+    DFS.delete(new Path(DEFAULT_DIR_PATH + "/.concat.bin.part-1"), false);
+    try {
+      writePart(upload, last * partSize, (int) (DATA.length - last * partSize));
+      fail("a missing part should fail the upload");
+    } catch (IOException e) {
+      // expected
+    }
+    assertFalse(DFS.exists(path));
+    assertSame(upload, instance.get(path));
+
+    // sending the missing part again completes the upload
+    writePart(upload, partSize, (int) partSize);
+    assertArrayEquals(DATA, readAll(path));
+    assertNull(instance.get(path));
+    assertEquals(0, DFS.globStatus(new Path(DEFAULT_DIR_PATH + "/.concat.bin.part-*")).length);
+  }
+
+  /**
+   * Test that an upload which can't be renamed into place is dropped with its
+   * parts, of class HdfsSegmentedUploads.
+   */
+  @Test
+  public void testRenameFailure() throws IOException {
+    LOG.info("Start testRenameFailure");
+    HdfsSegmentedUploads instance = new HdfsSegmentedUploads(DEFAULT_TIMEOUT);
+    Path path = new Path(DEFAULT_DIR_PATH + "/rename.bin");
+    // a file can't replace a directory
+    DFS.mkdirs(new Path(path, "child"));
+    HdfsSegmentedUploads.Upload upload = instance.declare(path, HDFSUSER, DATA.length, 3);
+    long partSize = upload.getPartSize();
+    try {
+      for (int i = 0; i < upload.getParts(); i++) {
+        writePart(upload, i * partSize, (int) Math.min(partSize, DATA.length - i * partSize));
+      }
+      fail("the upload should not replace a directory");
+    } catch (IOException e) {
+      // expected
+    }
+    assertTrue(DFS.getFileStatus(path).isDirectory());
+    assertNull(instance.get(path));
+    assertEquals(0, DFS.globStatus(new Path(DEFAULT_DIR_PATH + "/.rename.bin.part-*")).length);
+  }
+
+  /**
+   * Test of sizes and part counts out of range, of class
+   * HdfsSegmentedUploads.
+   */
+  @Test
+  public void testLimits() throws IOException {
+    LOG.info("Start testLimits");
+    HdfsSegmentedUploads instance = new HdfsSegmentedUploads(DEFAULT_TIMEOUT, 10);
+    Path path = new Path(DEFAULT_DIR_PATH + "/limits.bin");
+    try {
+      instance.declare(path, HDFSUSER, DATA.length, 11);
+      fail("too many parts should be refused");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      instance.declare(path, HDFSUSER, Long.MAX_VALUE, 1);
+      fail("a size overflowing the block rounding should be refused");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    HdfsSegmentedUploads.Upload upload = instance.declare(path, HDFSUSER,
+            Long.MAX_VALUE - DEFAULT_BLOCK_SIZE, 10);
+    assertEquals(10, upload.getParts());
+    assertNull(instance.get(new Path(DEFAULT_DIR_PATH + "/other.bin")));
+  }
+
+  /**
+   * Test of dropping an upload written by another user, of class
+   * HdfsSegmentedUploads.
+   */
+  @Test
+  public void testCancel() throws IOException {
+    LOG.info("Start testCancel");
+    HdfsSegmentedUploads instance = new HdfsSegmentedUploads(DEFAULT_TIMEOUT);
+    Path path = new Path(DEFAULT_DIR_PATH + "/cancel.bin");
+    HdfsSegmentedUploads.Upload upload = instance.declare(path, HDFSUSER, DATA.length, 3);
+    writePart(upload, 0, (int) upload.getPartSize());
+    assertTrue(upload.isDeclaredBy(HDFSUSER));
+    BaseUser other = new BaseUser();
+    other.setName("otheruser");
+    assertFalse(upload.isDeclaredBy(new HdfsUser(other)));
+
+    instance.cancel(upload);
+    assertNull(instance.get(path));
+    assertEquals(0, DFS.globStatus(new Path(DEFAULT_DIR_PATH + "/.cancel.bin.part-*")).length);
+  }
+}
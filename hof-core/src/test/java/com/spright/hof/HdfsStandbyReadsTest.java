@@ -0,0 +1,56 @@
+package com.spright.hof;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsStandbyReadsTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsStandbyReadsTest.class);
+
+  private static final long DEFAULT_LAG = 60000;
+  private static final long DEFAULT_MAX_ENTRIES = 100;
+
+  /**
+   * Test of changed method, of class HdfsStandbyReads.
+   */
+  @Test
+  public void testChanged() {
+    LOG.info("Start testChanged");
+    HdfsStandbyReads instance = new HdfsStandbyReads(DEFAULT_LAG, DEFAULT_MAX_ENTRIES);
+    assertFalse(instance.isChanged(new Path("/dir/file.txt")));
+
+    instance.changed(new Path("hdfs://mycluster/dir/file.txt"));
+    assertTrue(instance.isChanged(new Path("/dir/file.txt")));
+    // the listing of the parent has changed too
+    assertTrue(instance.isChanged(new Path("/dir")));
+    assertFalse(instance.isChanged(new Path("/dir/other.txt")));
+  }
+
+  /**
+   * Test of changedTree method, of class HdfsStandbyReads.
+   */
+  @Test
+  public void testChangedTree() {
+    LOG.info("Start testChangedTree");
+    HdfsStandbyReads instance = new HdfsStandbyReads(DEFAULT_LAG, DEFAULT_MAX_ENTRIES);
+    instance.changedTree(new Path("/dir/sub"));
+    assertTrue(instance.isChanged(new Path("/dir/sub/deep/file.txt")));
+    assertTrue(instance.isChanged(new Path("/dir")));
+    assertFalse(instance.isChanged(new Path("/dir/other")));
+  }
+
+  /**
+   * Test that changes are forgotten after the lag, of class HdfsStandbyReads.
+   */
+  @Test
+  public void testExpire() throws Exception {
+    LOG.info("Start testExpire");
+    HdfsStandbyReads instance = new HdfsStandbyReads(1, DEFAULT_MAX_ENTRIES);
+    instance.changedTree(new Path("/dir"));
+    Thread.sleep(10);
+    assertFalse(instance.isChanged(new Path("/dir/file.txt")));
+  }
+}
@@ -0,0 +1,113 @@
+package com.spright.hof;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsUploadPolicyTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsUploadPolicyTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+  private static HdfsUser HDFSUSER;
+
+  private static final long DEFAULT_BLOCK_SIZE = 4096;
+  private static final long ARCHIVE_BLOCK_SIZE = 8192;
+  private static final long ARCHIVE_MIN_SIZE = 1000;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsUploadPolicy.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CONF.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    CONF.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, DEFAULT_BLOCK_SIZE);
+    CLUSTER = new MiniDFSCluster.Builder(CONF).numDataNodes(2).build();
+    DFS = CLUSTER.getFileSystem();
+    BaseUser user = new BaseUser();
+    user.setName("ftpuser");
+    HDFSUSER = new HdfsUser(user);
+    ArrayList<String> groups = new ArrayList<String>();
+    groups.add("feeds");
+    HDFSUSER.setGroups(groups);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+  }
+
+  private static HdfsUploadPolicy newPolicy() {
+    HdfsUploadPolicy policy = new HdfsUploadPolicy();
+    HdfsUploadPolicy.Rule archive = new HdfsUploadPolicy.Rule("archive");
+    archive.setPrefix("/archive/");
+    archive.setMinSize(ARCHIVE_MIN_SIZE);
+    archive.setBlockSize(ARCHIVE_BLOCK_SIZE);
+    archive.setReplication((short) 1);
+    policy.addRule(archive);
+    HdfsUploadPolicy.Rule feeds = new HdfsUploadPolicy.Rule("feeds");
+    feeds.setGroup("feeds");
+    policy.addRule(feeds);
+    return policy;
+  }
+
+  /**
+   * Test of match method, of class HdfsUploadPolicy.
+   */
+  @Test
+  public void testMatch() {
+    LOG.info("Start testMatch");
+    HdfsUploadPolicy instance = newPolicy();
+    assertEquals("archive", instance.match(new Path("/archive/a.tar"), HDFSUSER,
+            ARCHIVE_MIN_SIZE).getName());
+    // too small or of unknown size
+    assertEquals("feeds", instance.match(new Path("/archive/a.tar"), HDFSUSER,
+            ARCHIVE_MIN_SIZE - 1).getName());
+    assertEquals("feeds", instance.match(new Path("/archive/a.tar"), HDFSUSER, -1).getName());
+    // not below the prefix
+    assertEquals("feeds", instance.match(new Path("/archived"), HDFSUSER,
+            ARCHIVE_MIN_SIZE).getName());
+    assertNull(instance.match(new Path("/archived"), null, ARCHIVE_MIN_SIZE));
+  }
+
+  /**
+   * Test of create method, of class HdfsUploadPolicy.
+   */
+  @Test
+  public void testCreate() throws IOException {
+    LOG.info("Start testCreate");
+    HdfsUploadPolicy instance = newPolicy();
+    Path archived = new Path("/archive/a.tar");
+    FSDataOutputStream out = instance.create(DFS, archived, HDFSUSER, ARCHIVE_MIN_SIZE);
+    out.write(1);
+    out.close();
+    FileStatus status = DFS.getFileStatus(archived);
+    assertEquals(ARCHIVE_BLOCK_SIZE, status.getBlockSize());
+    assertEquals(1, status.getReplication());
+
+    // no rule keeps the cluster defaults
+    Path other = new Path("/other.txt");
+    out = instance.create(DFS, other, null, -1);
+    out.close();
+    assertEquals(DEFAULT_BLOCK_SIZE, DFS.getFileStatus(other).getBlockSize());
+  }
+}
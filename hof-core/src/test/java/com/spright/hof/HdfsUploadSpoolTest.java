@@ -0,0 +1,260 @@
+package com.spright.hof;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Properties;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HdfsUploadSpoolTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HdfsUploadSpoolTest.class);
+  private static MiniDFSCluster CLUSTER;
+  private static Configuration CONF;
+  private static DistributedFileSystem DFS;
+  private static HdfsUser HDFSUSER;
+
+  private static final String DEFAULT_DIR_PATH = "/spool";
+  private static final long DEFAULT_MAX_BYTES = 1024;
+  private static final long DEFAULT_WAIT = 100;
+  private static final long DEFAULT_TIMEOUT = 30000;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    LOG.info("Start test HdfsUploadSpool.java");
+    LOG.info("Create MiniDFSCluster.");
+    CONF = new HdfsConfiguration();
+    CLUSTER = new MiniDFSCluster.Builder(CONF).build();
+    DFS = CLUSTER.getFileSystem();
+    DFS.mkdirs(new Path(DEFAULT_DIR_PATH));
+    HdfsOverFtpSystem.setDfs(DFS);
+    BaseUser user = new BaseUser();
+    user.setName("ftpuser");
+    HDFSUSER = new HdfsUser(user);
+    ArrayList<String> groups = new ArrayList<String>();
+    groups.add("ftpgroup");
+    HDFSUSER.setGroups(groups);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws IOException {
+    if (CLUSTER != null) {
+      LOG.info("Closing MiniDFSCluster");
+      CLUSTER.shutdown();
+      CLUSTER = null;
+    }
+    HdfsOverFtpSystem.setDfs(null);
+  }
+
+  private static void waitForCommits(HdfsUploadSpool spool) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + DEFAULT_TIMEOUT;
+    while (spool.size() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(0, spool.size());
+  }
+
+  /**
+   * Test of create method, of class HdfsUploadSpool.
+   */
+  @Test
+  public void testCreate() throws Exception {
+    LOG.info("Start testCreate");
+    HdfsUploadSpool instance = new HdfsUploadSpool(Files.createTempDir(), DEFAULT_MAX_BYTES, 1,
+            DEFAULT_WAIT);
+    try {
+      Path path = new Path(DEFAULT_DIR_PATH + "/file.txt");
+      OutputStream out = instance.create(path, HDFSUSER);
+      out.write(new byte[]{1, 2, 3});
+      assertTrue(instance.isPending(path));
+      assertTrue(instance.list().get(0).startsWith(path + " SPOOLING "));
+      assertEquals(1, instance.list("ftpuser").size());
+      assertTrue(instance.list("otheruser").isEmpty());
+      out.close();
+
+      waitForCommits(instance);
+      assertEquals(3, DFS.getFileStatus(path).getLen());
+      assertEquals("ftpuser", DFS.getFileStatus(path).getOwner());
+      assertEquals(0, instance.getUsedBytes());
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  /**
+   * Test of the disk budget, of class HdfsUploadSpool.
+   */
+  @Test
+  public void testFull() throws Exception {
+    LOG.info("Start testFull");
+    HdfsUploadSpool instance = new HdfsUploadSpool(Files.createTempDir(), DEFAULT_MAX_BYTES, 1,
+            DEFAULT_WAIT);
+    try {
+      OutputStream out = instance.create(new Path(DEFAULT_DIR_PATH + "/full.txt"), HDFSUSER);
+      out.write(new byte[(int) DEFAULT_MAX_BYTES]);
+      // a full spool takes no new uploads
+      assertNull(instance.create(new Path(DEFAULT_DIR_PATH + "/other.txt"), HDFSUSER));
+      try {
+        out.write(0);
+        fail("a write beyond the budget should time out");
+      } catch (IOException e) {
+        // expected
+      }
+      // the failed upload is dropped, not committed
+      out.close();
+      waitForCommits(instance);
+      assertFalse(DFS.exists(new Path(DEFAULT_DIR_PATH + "/full.txt")));
+      assertEquals(0, instance.getUsedBytes());
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  /**
+   * Test that an upload declared larger than the space left is not spooled,
+   * of class HdfsUploadSpool.
+   */
+  @Test
+  public void testDeclaredSize() throws Exception {
+    LOG.info("Start testDeclaredSize");
+    HdfsUploadSpool instance = new HdfsUploadSpool(Files.createTempDir(), DEFAULT_MAX_BYTES, 1,
+            DEFAULT_WAIT);
+    try {
+      Path path = new Path(DEFAULT_DIR_PATH + "/large.txt");
+      assertNull(instance.create(path, HDFSUSER, DEFAULT_MAX_BYTES + 1));
+      OutputStream out = instance.create(path, HDFSUSER, DEFAULT_MAX_BYTES);
+      assertNotNull(out);
+      out.close();
+      waitForCommits(instance);
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  /**
+   * Test of committing the uploads left in the spool directory, of class
+   * HdfsUploadSpool.
+   */
+  @Test
+  public void testRecover() throws Exception {
+    LOG.info("Start testRecover");
+    File dir = Files.createTempDir();
+    Path path = new Path(DEFAULT_DIR_PATH + "/recovered.txt");
+    Files.write(new byte[]{1, 2}, new File(dir, "7.data"));
+    writeJournal(new File(dir, "7.journal"), path.toString(), "QUEUED");
+    Files.write(new byte[]{1}, new File(dir, "8.data"));
+    writeJournal(new File(dir, "8.journal"), DEFAULT_DIR_PATH + "/incomplete.txt", "SPOOLING");
+
+    HdfsUploadSpool instance = new HdfsUploadSpool(dir, DEFAULT_MAX_BYTES, 1, DEFAULT_WAIT);
+    try {
+      waitForCommits(instance);
+      assertEquals(2, DFS.getFileStatus(path).getLen());
+      assertFalse(DFS.exists(new Path(DEFAULT_DIR_PATH + "/incomplete.txt")));
+      assertEquals(0, dir.list().length);
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  /**
+   * Test that only the latest upload of a file left in the spool directory is
+   * committed, of class HdfsUploadSpool.
+   */
+  @Test
+  public void testRecoverSuperseded() throws Exception {
+    LOG.info("Start testRecoverSuperseded");
+    File dir = Files.createTempDir();
+    Path path = new Path(DEFAULT_DIR_PATH + "/superseded.txt");
+    Files.write(new byte[]{1, 2, 3}, new File(dir, "9.data"));
+    writeJournal(new File(dir, "9.journal"), path.toString(), "QUEUED");
+    Files.write(new byte[]{1}, new File(dir, "10.data"));
+    writeJournal(new File(dir, "10.journal"), path.toString(), "QUEUED");
+    // superseded by a direct write
+    Path written = new Path(DEFAULT_DIR_PATH + "/written.txt");
+    DFS.create(written).close();
+    Files.write(new byte[]{1, 2}, new File(dir, "11.data"));
+    writeJournal(new File(dir, "11.journal"), written.toString(), "QUEUED", true);
+
+    HdfsUploadSpool instance = new HdfsUploadSpool(dir, DEFAULT_MAX_BYTES, 2, DEFAULT_WAIT);
+    try {
+      waitForCommits(instance);
+      assertEquals(1, DFS.getFileStatus(path).getLen());
+      assertEquals(0, DFS.getFileStatus(written).getLen());
+      assertEquals(0, dir.list().length);
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  /**
+   * Test that a direct write is journaled as superseding a spooled upload,
+   * of class HdfsUploadSpool.
+   */
+  @Test
+  public void testSupersede() throws Exception {
+    LOG.info("Start testSupersede");
+    File dir = Files.createTempDir();
+    Path path = new Path(DEFAULT_DIR_PATH + "/supersede.txt");
+    HdfsUploadSpool instance = new HdfsUploadSpool(dir, DEFAULT_MAX_BYTES, 1, DEFAULT_WAIT);
+    try {
+      OutputStream out = instance.create(path, HDFSUSER);
+      out.write(1);
+      instance.supersede(path);
+      assertFalse(instance.isPending(path));
+      File[] journals = dir.listFiles();
+      Properties props = new Properties();
+      for (File journal : journals) {
+        if (journal.getName().endsWith(".journal")) {
+          InputStream in = new FileInputStream(journal);
+          try {
+            props.load(in);
+          } finally {
+            in.close();
+          }
+        }
+      }
+      assertEquals("true", props.getProperty("superseded"));
+      out.close();
+      waitForCommits(instance);
+      assertFalse(DFS.exists(path));
+    } finally {
+      instance.shutdown();
+    }
+  }
+
+  private static void writeJournal(File journal, String path, String state) throws IOException {
+    writeJournal(journal, path, state, false);
+  }
+
+  private static void writeJournal(File journal, String path, String state, boolean superseded)
+          throws IOException {
+    Properties props = new Properties();
+    props.setProperty("superseded", Boolean.toString(superseded));
+    props.setProperty("path", path);
+    props.setProperty("user", "ftpuser");
+    props.setProperty("group", "ftpgroup");
+    props.setProperty("state", state);
+    OutputStream out = new FileOutputStream(journal);
+    try {
+      props.store(out, null);
+    } finally {
+      out.close();
+    }
+  }
+}